@@ -0,0 +1,163 @@
+package hardwar.branch.prediction.benchmark;
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.devices.CombinationalLogic;
+import hardwar.branch.prediction.shared.devices.PageHistoryTable;
+import hardwar.branch.prediction.shared.devices.PerAddressPredictionHistoryTable;
+import hardwar.branch.prediction.shared.devices.RegisterBank;
+import hardwar.branch.prediction.shared.devices.SIPORegister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * micro benchmarks of the shared devices, the Bit[] and the numeric paths are measured side by side
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceBenchmark {
+    private static final int KEYS = 64;
+
+    @Param({"8", "12"})
+    public int BHRSize;
+
+    @Param({"2"})
+    public int SCSize;
+
+    @Param({"4"})
+    public int selectorSize;
+
+    private PageHistoryTable PHT;
+    private PerAddressPredictionHistoryTable mapPAPHT;
+    private PerAddressPredictionHistoryTable flatPAPHT;
+    private RegisterBank registerBank;
+    private SIPORegister register;
+    private Bit[][] rowKeys;
+    private Bit[][] entryKeys;
+    private long[] entries;
+    private Bit[][] selectors;
+    private Bit[] block;
+    private Bit[] address;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PHT = new PageHistoryTable(1 << BHRSize, SCSize);
+        mapPAPHT = new PerAddressPredictionHistoryTable(selectorSize, 1 << BHRSize, SCSize, false);
+        flatPAPHT = new PerAddressPredictionHistoryTable(selectorSize, 1 << BHRSize, SCSize, true);
+        registerBank = new RegisterBank(selectorSize, BHRSize);
+        register = new SIPORegister("BHR", BHRSize, null);
+        rowKeys = new Bit[KEYS][];
+        entryKeys = new Bit[KEYS][];
+        entries = new long[KEYS];
+        selectors = new Bit[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            long row = (i * 0x9E3779B9L) & ((1L << BHRSize) - 1);
+            long selector = i & ((1L << selectorSize) - 1);
+            rowKeys[i] = PredictorBenchmark.bits(row, BHRSize);
+            entries[i] = (selector << BHRSize) | row;
+            entryKeys[i] = PredictorBenchmark.bits(entries[i], selectorSize + BHRSize);
+            selectors[i] = PredictorBenchmark.bits(selector, selectorSize);
+        }
+        block = PredictorBenchmark.bits(1, SCSize);
+        address = PredictorBenchmark.bits(0xB5, 8);
+    }
+
+    private int next() {
+        int i = cursor;
+        cursor = (i + 1) & (KEYS - 1);
+        return i;
+    }
+
+    @Benchmark
+    public Bit[] pageHistoryTableSetDefault() {
+        return PHT.setDefault(rowKeys[next()], block);
+    }
+
+    @Benchmark
+    public void pageHistoryTablePut() {
+        PHT.put(rowKeys[next()], block);
+    }
+
+    @Benchmark
+    public Bit[] perAddressTableSetDefaultBits() {
+        return mapPAPHT.setDefault(entryKeys[next()], block);
+    }
+
+    @Benchmark
+    public Bit[] flatPerAddressTableSetDefaultBits() {
+        return flatPAPHT.setDefault(entryKeys[next()], block);
+    }
+
+    @Benchmark
+    public int perAddressTableSetDefaultIndex() {
+        return mapPAPHT.setDefault(entries[next()], 1);
+    }
+
+    @Benchmark
+    public int flatPerAddressTableSetDefaultIndex() {
+        return flatPAPHT.setDefault(entries[next()], 1);
+    }
+
+    @Benchmark
+    public Bit[] registerBankReadWrite() {
+        Bit[] selector = selectors[next()];
+        Bit[] history = registerBank.read(selector).read();
+        registerBank.write(selector, history);
+        return history;
+    }
+
+    @Benchmark
+    public long registerBankShiftIn() {
+        long selector = next() & ((1L << selectorSize) - 1);
+        registerBank.shiftIn(selector, (selector & 1) != 0);
+        return registerBank.readBits(selector);
+    }
+
+    @Benchmark
+    public void SIPORegisterInsert() {
+        register.insert((next() & 1) == 0 ? Bit.ZERO : Bit.ONE);
+    }
+
+    @Benchmark
+    public Bit[] countBits() {
+        return CombinationalLogic.count(block, (next() & 1) == 0, CountMode.SATURATING);
+    }
+
+    @Benchmark
+    public int countInt() {
+        return CombinationalLogic.count(1, SCSize, (next() & 1) == 0, CountMode.SATURATING);
+    }
+
+    @Benchmark
+    public Bit[] hashBits() {
+        return CombinationalLogic.hash(entryKeys[next()], selectorSize, HashMode.XOR);
+    }
+
+    @Benchmark
+    public long hashLong() {
+        return CombinationalLogic.hash(entries[next()], selectorSize + BHRSize, selectorSize, HashMode.XOR);
+    }
+
+    @Benchmark
+    public String arrayToString() {
+        return Bit.arrayToString(address);
+    }
+}
@@ -0,0 +1,123 @@
+package hardwar.branch.prediction.benchmark;
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.simulator.PredictorConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * predict/update throughput of the judged predictors, every operation is one branch of a random trace
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredictorBenchmark {
+    static final int TRACE_SIZE = 1 << 12;
+    static final int BRANCH_INSTRUCTION_SIZE = 8;
+
+    @Param({"GAg", "GAp", "GAs", "PAg", "PAp", "PAs", "SAg", "SAp", "SAs"})
+    public String predictor;
+
+    @Param({"4", "8", "12"})
+    public int BHRSize;
+
+    @Param({"2"})
+    public int SCSize;
+
+    @Param({"4"})
+    public int KSize;
+
+    private BranchPredictor branchPredictor;
+    private long[] pcs;
+    private boolean[] outcomes;
+    private boolean[] predictions;
+    private BranchInstruction[] instructions;
+    private BranchResult[] results;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        branchPredictor = new PredictorConfig(predictor, BHRSize, SCSize, BRANCH_INSTRUCTION_SIZE, KSize,
+                HashMode.XOR).create();
+        Random random = new Random(42);
+        pcs = new long[TRACE_SIZE];
+        outcomes = new boolean[TRACE_SIZE];
+        predictions = new boolean[TRACE_SIZE];
+        instructions = new BranchInstruction[TRACE_SIZE];
+        results = new BranchResult[TRACE_SIZE];
+        Bit[] opcode = bits(0, 6);
+        for (int i = 0; i < TRACE_SIZE; i++) {
+            // a few hot branches with biased outcomes, so the tables are not trained by noise only
+            pcs[i] = random.nextInt(64) * 4 % (1 << BRANCH_INSTRUCTION_SIZE);
+            outcomes[i] = random.nextInt(8) < (pcs[i] % 7) + 1;
+            instructions[i] = new BranchInstruction(opcode, bits(pcs[i], BRANCH_INSTRUCTION_SIZE),
+                    bits(pcs[i] + 16, BRANCH_INSTRUCTION_SIZE));
+            results[i] = BranchResult.of(outcomes[i]);
+        }
+    }
+
+    static Bit[] bits(long value, int length) {
+        Bit[] bits = new Bit[length];
+        for (int i = 0; i < length; i++) bits[i] = Bit.of(((value >>> (length - 1 - i)) & 1) != 0);
+        return bits;
+    }
+
+    private int next() {
+        int i = cursor;
+        cursor = (i + 1) & (TRACE_SIZE - 1);
+        return i;
+    }
+
+    /**
+     * the original API, a Bit[] address per branch
+     */
+    @Benchmark
+    public BranchResult predictUpdateInstruction() {
+        int i = next();
+        BranchResult prediction = branchPredictor.predict(instructions[i]);
+        branchPredictor.update(instructions[i], results[i]);
+        return prediction;
+    }
+
+    @Benchmark
+    public boolean predictUpdateAddress() {
+        int i = next();
+        boolean prediction = branchPredictor.predict(pcs[i]);
+        branchPredictor.update(pcs[i], outcomes[i]);
+        return prediction;
+    }
+
+    @Benchmark
+    public boolean predictAndUpdate() {
+        int i = next();
+        return branchPredictor.predictAndUpdate(pcs[i], outcomes[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRACE_SIZE)
+    public void simulate(Blackhole blackhole) {
+        blackhole.consume(branchPredictor.simulate(pcs, outcomes, 0, TRACE_SIZE, predictions));
+    }
+}
@@ -1,14 +1,9 @@
 package hardwar.branch.prediction.judged.GAg;
 
-import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.judged.GlobalHistoryPredictor;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
-
-public class GAg implements BranchPredictor {
-    private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PHT; // page history table
-    private final ShiftRegister SC; // saturated counter register
+public class GAg extends GlobalHistoryPredictor {
 
     public GAg() {
         this(4, 2);
@@ -23,65 +18,35 @@ public class GAg implements BranchPredictor {
      *                value and the cache block size
      */
     public GAg(int BHRSize, int SCSize) {
-        // Initialize the BHR register with the given size and no default value
-        this.BHR = new SIPORegister("BHR", BHRSize, null);
-
-        // Initialize the PHT with a size of 2^size and each entry having a saturating
-        // counter of size "SCSize"
-        this.PHT = new PageHistoryTable(1 << BHRSize, SCSize);
-
-        // Initialize the SC register
-        this.SC = new SIPORegister("SC", SCSize, null);
+        this(BHRSize, SCSize, IndexFunctions.history());
     }
 
     /**
-     * Predicts the result of a branch instruction based on the global branch
-     * history
+     * Creates a new GAg predictor which indexes the PHT with the given function, e.g. gshare
      *
-     * @param branchInstruction the branch instruction
-     * @return the predicted outcome of the branch instruction (taken or not taken)
+     * @param BHRSize       the size of the BHR register
+     * @param SCSize        the size of the register which hold the saturating counter
+     *                      value and the cache block size
+     * @param indexFunction maps the branch address and the BHR value to the PHT entry
      */
-    @Override
-    public BranchResult predict(BranchInstruction branchInstruction) {
-        // read the bhr
-        Bit[] bhrData = BHR.read();
-        // initialize the PHT if empty
-        PHT.putIfAbsent(bhrData, getDefaultBlock());
-        // read from the cache
-        Bit[] block = PHT.get(bhrData);
-        // load into the SC register
-        SC.load(block);
-        return BranchResult.of(block[0].getValue());
+    public GAg(int BHRSize, int SCSize, IndexFunction indexFunction) {
+        this(BHRSize, SCSize, indexFunction, BHRSize);
     }
 
     /**
-     * Updates the values in the cache based on the actual branch result
+     * Creates a new GAg predictor with a history longer than its BHR index. The history is kept in a
+     * folded history register and xor folded to BHRSize bits in O(1) per branch, so the history can be
+     * hundreds of bits long while the table has 2^BHRSize rows per PHT.
      *
-     * @param instruction the branch instruction
-     * @param actual      the actual result of the branch condition
+     * @param BHRSize       the size of the BHR index
+     * @param SCSize        the size of the register which hold the saturating counter value
+     * @param indexFunction maps the branch address and the folded BHR value to the PHT entry
+     * @param historyLength the number of history bits, at least BHRSize
      */
-    @Override
-    public void update(BranchInstruction instruction, BranchResult actual) {
-        // counting from the SC register
-        Bit[] counted = CombinationalLogic.count(this.SC.read(),
-                BranchResult.isTaken(actual), CountMode.SATURATING);
-        // updating our cache
-        PHT.put(BHR.read(), counted);
-        // updating the BHR
-        BHR.insert(Bit.of(BranchResult.isTaken(actual)));
-    }
-
-    /**
-     * @return a zero series of bits as default value of cache block
-     */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
-    }
-
-    @Override
-    public String monitor() {
-        return "GAg predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PHT.monitor();
+    public GAg(int BHRSize, int SCSize, IndexFunction indexFunction, int historyLength) {
+        // Initialize the PHT with a size of 2^size and each entry having a saturating
+        // counter of size "SCSize"
+        super("GAg", BHRSize, indexFunction, historyLength,
+                new FlatPageHistoryTable(1 << (BHRSize + indexFunction.selectorBits()), SCSize));
     }
 }
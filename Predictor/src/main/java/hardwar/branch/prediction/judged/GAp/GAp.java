@@ -1,15 +1,9 @@
 package hardwar.branch.prediction.judged.GAp;
 
-import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.judged.GlobalHistoryPredictor;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
-
-public class GAp implements BranchPredictor {
-    private final int branchInstructionSize;
-    private final ShiftRegister SC; // saturating counter register
-    private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PAPHT; // Per Address History Table
+public class GAp extends GlobalHistoryPredictor {
 
     public GAp() {
         this(4, 2, 8);
@@ -27,105 +21,54 @@ public class GAp implements BranchPredictor {
      *                              branch instruction
      */
     public GAp(int BHRSize, int SCSize, int branchInstructionSize) {
-        this.branchInstructionSize = branchInstructionSize;
-
-        // Initialize the BHR register with the given size and no default value
-        this.BHR = new SIPORegister("BHR", BHRSize, null);
-
-        // Initializing the PAPHT with BranchInstructionSize as PHT Selector and
-        // 2^BHRSize row as each PHT entries
-        // number and SCSize as block size
-        this.PAPHT = new PerAddressPredictionHistoryTable(
-                branchInstructionSize,
-                1 << BHRSize, SCSize);
-
-        // Initialize the SC register
-        this.SC = new SIPORegister("SC", SCSize, null);
+        this(BHRSize, SCSize, IndexFunctions.concat(branchInstructionSize, BHRSize));
     }
 
     /**
-     * predicts the result of a branch instruction based on the global branch
-     * history and branch address
+     * Creates a new GAp predictor which indexes the PAPHT with the given function, the selector bits of the
+     * function select the PHT
      *
-     * @param branchInstruction the branch instruction
-     * @return the predicted outcome of the branch instruction (taken or not taken)
+     * @param BHRSize       the size of the BHR register
+     * @param SCSize        the size of the register which hold the
+     *                      saturating counter value
+     * @param indexFunction maps the branch address and the BHR value to the PAPHT entry
      */
-    @Override
-    public BranchResult predict(BranchInstruction branchInstruction) {
-        // read the bhr
-        Bit[] bhrData = BHR.read();
-
-        // concatenate the instruction address
-        int len1 = branchInstruction.getInstructionAddress().length;
-        int len2 = BHR.getLength();
-        Bit[] concatenated = new Bit[len1 + len2];
-        System.arraycopy(branchInstruction.getInstructionAddress(), 0,
-                concatenated, 0, len1);
-        System.arraycopy(bhrData, 0, concatenated, len1, len2);
-
-        // initialize the PHT if empty
-        PAPHT.putIfAbsent(concatenated, getDefaultBlock());
-        // read from the cache
-        Bit[] block = PAPHT.get(concatenated);
-        // load into the SC register
-        SC.load(block);
-        return BranchResult.of(block[0].getValue());
+    public GAp(int BHRSize, int SCSize, IndexFunction indexFunction) {
+        this(BHRSize, SCSize, indexFunction, BHRSize);
     }
 
     /**
-     * Updates the value in the cache based on actual branch result
+     * Creates a new GAp predictor with a history longer than its BHR index. The history is kept in a
+     * folded history register and xor folded to BHRSize bits in O(1) per branch, so the history can be
+     * hundreds of bits long while the table has 2^BHRSize rows per PHT.
      *
-     * @param branchInstruction the branch instruction
-     * @param actual            the actual result of branch (Taken or Not)
+     * @param BHRSize       the size of the BHR index
+     * @param SCSize        the size of the register which hold the saturating counter value
+     * @param indexFunction maps the branch address and the folded BHR value to the PAPHT entry
+     * @param historyLength the number of history bits, at least BHRSize
      */
-    @Override
-    public void update(BranchInstruction branchInstruction, BranchResult actual) {
-        // counting from the SC register
-        Bit[] counted = CombinationalLogic.count(this.SC.read(),
-                BranchResult.isTaken(actual), CountMode.SATURATING);
-        // updating our cache
-        // read the bhr
-        Bit[] bhrData = BHR.read();
-        // concatenate the instruction address
-        int len1 = branchInstruction.getInstructionAddress().length;
-        int len2 = BHR.getLength();
-        Bit[] concatenated = new Bit[len1 + len2];
-        System.arraycopy(branchInstruction.getInstructionAddress(), 0,
-                concatenated, 0, len1);
-        System.arraycopy(bhrData, 0, concatenated, len1, len2);
-        
-        PAPHT.put(concatenated, counted);
-        // updating the BHR
-        BHR.insert(Bit.of(BranchResult.isTaken(actual)));
+    public GAp(int BHRSize, int SCSize, IndexFunction indexFunction, int historyLength) {
+        // Initializing the PAPHT with the selector bits of the index function as PHT Selector and
+        // 2^BHRSize row as each PHT entries
+        // number and SCSize as block size
+        this(BHRSize, SCSize, indexFunction, historyLength, PerAddressPredictionHistoryTable.create(
+                indexFunction.selectorBits(),
+                1 << BHRSize, SCSize));
     }
 
     /**
-     * concat the branch address and BHR to retrieve the desired address
+     * Creates a new GAp predictor on the given PAPHT, e.g. a PAPHT which is saved in an off heap table for
+     * large address sizes. The caller closes the table.
      *
-     * @param branchAddress program counter
-     * @return concatenated value of first M bits of branch address and BHR
-     */
-    private Bit[] getCacheEntry(Bit[] branchAddress) {
-        // Concatenate the branch address bits with the BHR bits
-        Bit[] bhrBits = BHR.read();
-        Bit[] cacheEntry = new Bit[branchAddress.length + bhrBits.length];
-        System.arraycopy(branchAddress, 0, cacheEntry, 0, branchInstructionSize);
-        System.arraycopy(bhrBits, 0, cacheEntry, branchAddress.length, bhrBits.length);
-        return cacheEntry;
-    }
-
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
-    }
-
-    /**
-     * @return snapshot of caches and registers content
+     * @param BHRSize       the size of the BHR index
+     * @param SCSize        the size of the register which hold the saturating counter value, it must be the
+     *                      block size of the PAPHT
+     * @param indexFunction maps the branch address and the BHR value to the PAPHT entry
+     * @param historyLength the number of history bits, at least BHRSize
+     * @param PAPHT         the table with 2^BHRSize rows for each selector of the index function
+     * @throws IllegalArgumentException if the block size of the PAPHT is not SCSize
      */
-    @Override
-    public String monitor() {
-        return "GAp predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PAPHT.monitor();
+    public GAp(int BHRSize, int SCSize, IndexFunction indexFunction, int historyLength, IndexedCache PAPHT) {
+        super("GAp", BHRSize, indexFunction, historyLength, IndexedCache.requireColumns(PAPHT, SCSize));
     }
-
 }
@@ -1,18 +1,10 @@
 package hardwar.branch.prediction.judged.GAs;
 
-import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.judged.GlobalHistoryPredictor;
+import hardwar.branch.prediction.shared.HashMode;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
-
-public class GAs implements BranchPredictor {
-
-    private final int branchInstructionSize;
-    private final int KSize;
-    private final HashMode hashMode;
-    private final ShiftRegister SC; // saturating counter register
-    private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PSPHT; // Per Set Predication History Table
+public class GAs extends GlobalHistoryPredictor {
 
     public GAs() {
         this(4, 2, 8, 4, HashMode.XOR);
@@ -30,95 +22,56 @@ public class GAs implements BranchPredictor {
      *                              branch instruction
      */
     public GAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashmode) {
-        this.branchInstructionSize = branchInstructionSize;
-        this.KSize = KSize;
-        this.hashMode = hashmode;
-
-        // Initialize the BHR register with the given size and no default value
-        this.BHR = new SIPORegister("BHR", BHRSize, null);
-
-        // Initializing the PAPHT with K bit as PHT selector and 2^BHRSize row as each
-        // PHT entries
-        // number and SCSize as block size
-        PSPHT = new PerAddressPredictionHistoryTable(
-                KSize, 1 << BHRSize, SCSize);
-
-        // Initialize the SC register
-        this.SC = new SIPORegister("SC", SCSize, null);
+        this(BHRSize, SCSize, IndexFunctions.hashConcat(branchInstructionSize, KSize, hashmode, BHRSize));
     }
 
     /**
-     * predicts the result of a branch instruction based on the global branch
-     * history and hash value of
-     * branch instruction address
+     * Creates a new GAs predictor which indexes the PSPHT with the given function, the selector bits of the
+     * function select the PHT
      *
-     * @param branchInstruction the branch instruction
-     * @return the predicted outcome of the branch instruction (taken or not taken)
+     * @param BHRSize       the size of the BHR register
+     * @param SCSize        the size of the register which hold the
+     *                      saturating counter value
+     * @param indexFunction maps the branch address and the BHR value to the PSPHT entry
      */
-    @Override
-    public BranchResult predict(BranchInstruction branchInstruction) {
-        // concatenate the instruction address
-        // hashing the address
-        Bit[] hash = getCacheEntry(branchInstruction.getInstructionAddress());
-
-        // initialize the PHT if empty
-        PSPHT.putIfAbsent(hash, getDefaultBlock());
-        // read from the cache
-        Bit[] block = PSPHT.get(hash);
-        // load into the SC register
-        SC.load(block);
-        return BranchResult.of(block[0].getValue());
+    public GAs(int BHRSize, int SCSize, IndexFunction indexFunction) {
+        this(BHRSize, SCSize, indexFunction, BHRSize);
     }
 
     /**
-     * Updates the value in the cache based on actual branch result
+     * Creates a new GAs predictor with a history longer than its BHR index. The history is kept in a
+     * folded history register and xor folded to BHRSize bits in O(1) per branch, so the history can be
+     * hundreds of bits long while the table has 2^BHRSize rows per PHT.
      *
-     * @param branchInstruction the branch instruction
-     * @param actual            the actual result of branch (Taken or Not)
+     * @param BHRSize       the size of the BHR index
+     * @param SCSize        the size of the register which hold the saturating counter value
+     * @param indexFunction maps the branch address and the folded BHR value to the PSPHT entry
+     * @param historyLength the number of history bits, at least BHRSize
      */
-    @Override
-    public void update(BranchInstruction branchInstruction, BranchResult actual) {
-        // counting from the SC register
-        Bit[] counted = CombinationalLogic.count(this.SC.read(),
-                BranchResult.isTaken(actual), CountMode.SATURATING);
-        // updating our cache
-        // read the bhr
-        Bit[] hash = getCacheEntry(branchInstruction.getInstructionAddress());
-
-        PSPHT.put(hash, counted);
-        // updating the BHR
-        BHR.insert(Bit.of(BranchResult.isTaken(actual)));
-    }
-
-    /**
-     * @return snapshot of caches and registers content
-     */
-    public String monitor() {
-        return "GAp predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PSPHT.monitor();
+    public GAs(int BHRSize, int SCSize, IndexFunction indexFunction, int historyLength) {
+        // Initializing the PAPHT with the K bit hash as PHT selector and 2^BHRSize row as each
+        // PHT entries
+        // number and SCSize as block size
+        this(BHRSize, indexFunction, historyLength, PerAddressPredictionHistoryTable.create(
+                indexFunction.selectorBits(), 1 << BHRSize, SCSize));
     }
 
     /**
-     * concat the PC and BHR to retrieve the desired address
+     * Creates a new GAs predictor on the given PSPHT, e.g. a concurrent PSPHT which is shared by the
+     * predictors of several hardware threads, each one with its own BHR.
      *
-     * @param branchAddress program counter
-     * @return concatenated value of first M bits of branch address and BHR
+     * @param BHRSize       the size of the BHR register
+     * @param SCSize        the size of the register which hold the saturating counter value, it must be the
+     *                      block size of the PSPHT
+     * @param indexFunction maps the branch address and the BHR value to the PSPHT entry
+     * @param PSPHT         the table with 2^BHRSize rows for each selector of the index function
+     * @throws IllegalArgumentException if the block size of the PSPHT is not SCSize
      */
-    private Bit[] getCacheEntry(Bit[] branchAddress) {
-        // hash the branch address
-        Bit[] hashKSize = CombinationalLogic.hash(branchAddress, KSize, hashMode);
-
-        // Concatenate the Hash bits with the BHR bits
-        Bit[] bhrBits = BHR.read();
-        Bit[] cacheEntry = new Bit[hashKSize.length + bhrBits.length];
-        System.arraycopy(hashKSize, 0, cacheEntry, 0, hashKSize.length);
-        System.arraycopy(bhrBits, 0, cacheEntry, hashKSize.length, bhrBits.length);
-
-        return cacheEntry;
+    public GAs(int BHRSize, int SCSize, IndexFunction indexFunction, IndexedCache PSPHT) {
+        this(BHRSize, indexFunction, BHRSize, IndexedCache.requireColumns(PSPHT, SCSize));
     }
 
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
+    private GAs(int BHRSize, IndexFunction indexFunction, int historyLength, IndexedCache PSPHT) {
+        super("GAs", BHRSize, indexFunction, historyLength, PSPHT);
     }
 }
@@ -0,0 +1,354 @@
+package hardwar.branch.prediction.judged;
+
+/*
+ * the common flow of the global history predictors (GAg, GAp and GAs)
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the predictor has one BHR, the index function maps the branch address and the BHR value to the table entry.
+ * the predictors differ only in their table and their index function, which are given to the constructor.
+ *
+ * 2) a history longer than the BHR index is kept in a folded history register and xor folded to the BHR size,
+ * otherwise the BHR is a SIPO register. the speculative updates of both are checkpointed.
+ *
+ * 3) the block size of the table is the size of the SC register.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.AliasingDetector;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.PredictionHandle;
+import hardwar.branch.prediction.shared.PredictorMetrics;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+import hardwar.branch.prediction.shared.SpeculativePredictor;
+import hardwar.branch.prediction.shared.devices.CombinationalLogic;
+import hardwar.branch.prediction.shared.devices.FoldedHistoryRegister;
+import hardwar.branch.prediction.shared.devices.IndexFunction;
+import hardwar.branch.prediction.shared.devices.IndexedCache;
+import hardwar.branch.prediction.shared.devices.SIPORegister;
+import hardwar.branch.prediction.shared.devices.ShiftRegister;
+import hardwar.branch.prediction.shared.devices.SpeculativeHistory;
+
+import java.io.IOException;
+
+public abstract class GlobalHistoryPredictor implements SpeculativePredictor {
+    private final String name; // the name of the predictor in its monitor
+    private final ShiftRegister BHR; // branch history register
+    private final FoldedHistoryRegister foldedBHR; // the BHR if the history is longer than the index, otherwise null
+    private final SpeculativeHistory speculation; // checkpoints of the speculative BHR updates
+    private final IndexedCache table; // the PHT, PAPHT or PSPHT
+    private final ShiftRegister SC; // saturated counter register
+    private final IndexFunction indexFunction; // maps the address and the BHR to the table entry
+    private final PredictorMetrics metrics; // prediction and table counters
+    private AliasingDetector aliasing; // shadow tags of the table, null if the aliasing is not detected
+
+    /**
+     * @param name          the name of the predictor, e.g. GAg
+     * @param BHRSize       the size of the BHR index
+     * @param indexFunction maps the branch address and the (folded) BHR value to the table entry
+     * @param historyLength the number of history bits, at least BHRSize
+     * @param table         the table with 2^BHRSize rows for each selector of the index function
+     */
+    protected GlobalHistoryPredictor(String name, int BHRSize, IndexFunction indexFunction, int historyLength,
+                                     IndexedCache table) {
+        if (historyLength < BHRSize) throw new IllegalArgumentException("history is shorter than the BHR");
+        this.name = name;
+        this.indexFunction = indexFunction;
+
+        // Initialize the BHR register with the given size and no default value, a longer history is folded
+        this.foldedBHR = historyLength > BHRSize ? new FoldedHistoryRegister("BHR", historyLength, BHRSize) : null;
+        this.BHR = foldedBHR != null ? foldedBHR : new SIPORegister("BHR", BHRSize, null);
+        this.speculation = new SpeculativeHistory(BHR, SpeculativeHistory.DEFAULT_CAPACITY);
+
+        this.table = table;
+
+        // Initialize the SC register
+        this.SC = new SIPORegister("SC", table.getColumns(), null);
+
+        // the counters of predictions and table accesses
+        this.metrics = new PredictorMetrics(table, null);
+    }
+
+    /**
+     * Predicts the result of a branch instruction based on the global branch history
+     *
+     * @param branchInstruction the branch instruction
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
+    @Override
+    public BranchResult predict(BranchInstruction branchInstruction) {
+        return BranchResult.of(predict(BitVector.toLong(branchInstruction.getInstructionAddress())));
+    }
+
+    /**
+     * Updates the values in the cache based on the actual branch result
+     *
+     * @param instruction the branch instruction
+     * @param actual      the actual result of the branch condition
+     */
+    @Override
+    public void update(BranchInstruction instruction, BranchResult actual) {
+        update(BitVector.toLong(instruction.getInstructionAddress()), BranchResult.isTaken(actual));
+    }
+
+    /**
+     * @param instructionAddress the branch instruction address, used by the index function only
+     * @return true if the branch is predicted as taken
+     */
+    @Override
+    public boolean predict(long instructionAddress) {
+        metrics.recordPrediction();
+        // read the block associated with the address and bhr, initialize the table if empty
+        int block = table.setDefault(indexFunction.index(instructionAddress, readHistory()), 0);
+        // load into the SC register
+        SC.loadBits(block);
+        return isTaken(block);
+    }
+
+    /**
+     * @param instructionAddress the branch instruction address, used by the index function only
+     * @param taken              the actual result of the branch condition
+     */
+    @Override
+    public void update(long instructionAddress, boolean taken) {
+        metrics.recordUpdate(isTaken((int) SC.readBits()) != taken);
+        // counting from the SC register
+        int counted = CombinationalLogic.count((int) SC.readBits(), SC.getLength(), taken, CountMode.SATURATING);
+        // updating our cache
+        long index = indexFunction.index(instructionAddress, readHistory());
+        table.put(index, counted);
+        if (aliasing != null) aliasing.observe(instructionAddress, index, (int) SC.readBits(), taken);
+        // updating the BHR
+        BHR.insert(Bit.of(taken));
+    }
+
+    /**
+     * the counter and its entry are kept in the handle, the SC register is not used
+     */
+    @Override
+    public boolean predict(long instructionAddress, PredictionHandle handle) {
+        metrics.recordPrediction();
+        long index = indexFunction.index(instructionAddress, readHistory());
+        int block = table.setDefault(index, 0);
+        return handle.load(instructionAddress, index, 0, block, isTaken(block));
+    }
+
+    @Override
+    public void update(PredictionHandle handle, boolean taken) {
+        train(handle, taken);
+        BHR.insert(Bit.of(taken));
+    }
+
+    /**
+     * the predicted result is shifted into the BHR, or the folded history, at once. the checkpoint repairs it
+     * on a misprediction. the prediction is not recorded in the metrics until it is resolved, so a squashed
+     * prediction is not counted.
+     *
+     * @throws IllegalStateException if the checkpoints are full
+     */
+    @Override
+    public boolean predictSpeculative(long instructionAddress, PredictionHandle handle) {
+        long index = indexFunction.index(instructionAddress, readHistory());
+        int block = table.setDefault(index, 0);
+        boolean prediction = handle.load(instructionAddress, index, 0, block, isTaken(block));
+        handle.setCheckpoint(speculation.speculate(prediction));
+        return prediction;
+    }
+
+    /**
+     * the resolved branch is recorded as one prediction and its update
+     */
+    @Override
+    public boolean resolve(PredictionHandle handle, boolean taken) {
+        // the checkpoint is checked before the counter is trained
+        boolean mispredicted = speculation.resolve(handle.getCheckpoint(), taken);
+        metrics.recordPrediction();
+        train(handle, taken);
+        return mispredicted;
+    }
+
+    @Override
+    public int inFlight() {
+        return speculation.inFlight();
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        return BranchResult.of(predictAndUpdate(BitVector.toLong(instruction.getInstructionAddress()),
+                BranchResult.isTaken(actual)));
+    }
+
+    /**
+     * predicts the branch and trains it with one read-modify-write of the table
+     *
+     * @param instructionAddress the branch instruction address, used by the index function only
+     * @param taken              the actual result of branch
+     * @return true if the branch was predicted as taken, before the update
+     */
+    @Override
+    public boolean predictAndUpdate(long instructionAddress, boolean taken) {
+        // read and count the block associated with the address and bhr
+        long index = indexFunction.index(instructionAddress, readHistory());
+        int block = table.getAndCount(index, 0, taken, CountMode.SATURATING);
+        if (aliasing != null) aliasing.observe(instructionAddress, index, block, taken);
+        // load the predicted block into the SC register
+        SC.loadBits(block);
+        // updating the BHR
+        BHR.insert(Bit.of(taken));
+        metrics.record(isTaken(block) != taken);
+        return isTaken(block);
+    }
+
+    /**
+     * replays the chunk with the BHR and the tables held in locals, the registers are written back at the end
+     *
+     * @param pcs            the branch instruction addresses as numbers
+     * @param outcomes       the actual results of branches
+     * @param from           the index of the first branch, inclusive
+     * @param to             the index of the last branch, exclusive
+     * @param predictionsOut receives the prediction of branch i at index i, may be null
+     * @return the number of mispredicted branches in the chunk
+     */
+    @Override
+    public int simulate(long[] pcs, boolean[] outcomes, int from, int to, boolean[] predictionsOut) {
+        if (from >= to) return 0;
+        if (foldedBHR != null) return simulateFolded(pcs, outcomes, from, to, predictionsOut);
+        final IndexedCache table = this.table;
+        final IndexFunction function = indexFunction;
+        // the detector observes only the sampled chunks
+        final AliasingDetector detector = aliasing != null && aliasing.begin(to - from) ? aliasing : null;
+        final int bhrSize = BHR.getLength();
+        final int counterMSB = SC.getLength() - 1;
+        final long insertBit = 1L << (bhrSize - 1);
+        long bhr = BHR.readBits();
+        int block = 0;
+        int mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes[i];
+            long index = function.index(pcs[i], bhr);
+            block = table.getAndCount(index, 0, taken, CountMode.SATURATING);
+            if (detector != null) detector.record(pcs[i], index, block, taken);
+            boolean prediction = (block >>> counterMSB) != 0;
+            if (predictionsOut != null) predictionsOut[i] = prediction;
+            if (prediction != taken) mispredictions++;
+            // shift the outcome in as the first bit of the history
+            bhr = (bhr >>> 1) | (taken ? insertBit : 0L);
+        }
+        SC.loadBits(block);
+        BHR.loadBits(bhr);
+        if (detector != null) detector.end();
+        metrics.record(to - from, mispredictions);
+        return mispredictions;
+    }
+
+    /**
+     * replays the chunk on the folded BHR, the folded value is updated in O(1) per branch
+     */
+    private int simulateFolded(long[] pcs, boolean[] outcomes, int from, int to, boolean[] predictionsOut) {
+        final IndexedCache table = this.table;
+        final IndexFunction function = indexFunction;
+        // the detector observes only the sampled chunks
+        final AliasingDetector detector = aliasing != null && aliasing.begin(to - from) ? aliasing : null;
+        final FoldedHistoryRegister history = foldedBHR;
+        final int counterMSB = SC.getLength() - 1;
+        int block = 0;
+        int mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes[i];
+            long index = function.index(pcs[i], history.readFolded());
+            block = table.getAndCount(index, 0, taken, CountMode.SATURATING);
+            if (detector != null) detector.record(pcs[i], index, block, taken);
+            boolean prediction = (block >>> counterMSB) != 0;
+            if (predictionsOut != null) predictionsOut[i] = prediction;
+            if (prediction != taken) mispredictions++;
+            history.shiftIn(taken);
+        }
+        SC.loadBits(block);
+        if (detector != null) detector.end();
+        metrics.record(to - from, mispredictions);
+        return mispredictions;
+    }
+
+    /**
+     * counts the counter of the handle and writes it back to its entry, the BHR is not changed
+     */
+    private void train(PredictionHandle handle, boolean taken) {
+        metrics.recordUpdate(handle.isPredictedTaken() != taken);
+        int counted = CombinationalLogic.count(handle.getCounter(), SC.getLength(), taken, CountMode.SATURATING);
+        table.put(handle.getIndex(), counted);
+        if (aliasing != null)
+            aliasing.observe(handle.getInstructionAddress(), handle.getIndex(), handle.getCounter(), taken);
+    }
+
+    /**
+     * @return the BHR value, or the history folded to the BHR size if it is longer
+     */
+    private long readHistory() {
+        return foldedBHR == null ? BHR.readBits() : foldedBHR.readFolded();
+    }
+
+    /**
+     * @param block the saturating counter value
+     * @return the MSB of the counter
+     */
+    private boolean isTaken(int block) {
+        return (block >>> (SC.getLength() - 1)) != 0;
+    }
+
+    @Override
+    public PredictorMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void setAliasingDetector(AliasingDetector detector) {
+        this.aliasing = detector;
+        metrics.setAliasingDetector(detector);
+    }
+
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        saveContext(out);
+        table.snapshot(out);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        restoreContext(in);
+        table.restore(in);
+    }
+
+    /**
+     * writes the BHR and the SC register, the speculative branches must be resolved before
+     *
+     * @throws IllegalStateException if a speculative branch is in flight
+     */
+    @Override
+    public void saveContext(SnapshotOutput out) throws IOException {
+        if (inFlight() != 0) throw new IllegalStateException("speculative branches are in flight");
+        BHR.snapshot(out);
+        SC.snapshot(out);
+    }
+
+    /**
+     * the checkpoints of the in-flight branches are dropped
+     */
+    @Override
+    public void restoreContext(SnapshotInput in) throws IOException {
+        BHR.restore(in);
+        SC.restore(in);
+        speculation.clear();
+    }
+
+    /**
+     * @return snapshot of caches and registers content
+     */
+    @Override
+    public String monitor() {
+        return name + " predictor snapshot: \n" + BHR.monitor() + SC.monitor() + table.monitor();
+    }
+}
@@ -1,14 +1,9 @@
 package hardwar.branch.prediction.judged.PAg;
 
-import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.judged.RegisterBankPredictor;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
-
-public class PAg implements BranchPredictor {
-    private final ShiftRegister SC; // saturating counter register
-    private final RegisterBank PABHR; // per address branch history register
-    private final Cache<Bit[], Bit[]> PHT; // page history table
+public class PAg extends RegisterBankPredictor {
 
     public PAg() {
         this(4, 2, 8);
@@ -23,64 +18,22 @@ public class PAg implements BranchPredictor {
      * @param branchInstructionSize the number of bits which is used for saving a branch instruction
      */
     public PAg(int BHRSize, int SCSize, int branchInstructionSize) {
-        // Initialize the BHR register with the given size and no default value
-        this.PABHR = new RegisterBank(branchInstructionSize, BHRSize);
-
-        // Initialize the PHT with a size of 2^size and each entry having a saturating
-        // counter of size "SCSize"
-        this.PHT = new PageHistoryTable(1 << BHRSize, SCSize);
-
-        // Initialize the SC register
-        this.SC = new SIPORegister("SC", SCSize, null);
+        this(BHRSize, SCSize, branchInstructionSize, IndexFunctions.history());
     }
 
     /**
-     * @param instruction the branch instruction
-     * @return the predicted outcome of the branch instruction (taken or not taken)
-     */
-    @Override
-    public BranchResult predict(BranchInstruction instruction) {
-        ShiftRegister BHR = PABHR.read(instruction.getInstructionAddress());
-        // read the bhr
-        Bit[] bhrData = BHR.read();
-        // initialize the PHT if empty
-        PHT.putIfAbsent(bhrData, getDefaultBlock());
-        // read from the cache
-        Bit[] block = PHT.get(bhrData);
-        // load into the SC register
-        SC.load(block);
-        PABHR.write(instruction.getInstructionAddress(), BHR.read());
-        return BranchResult.of(block[0].getValue());
-    }
-
-    /**
-     * @param instruction the branch instruction
-     * @param actual      the actual result of branch (taken or not)
-     */
-    @Override
-    public void update(BranchInstruction instruction, BranchResult actual) {
-        ShiftRegister BHR = PABHR.read(instruction.getInstructionAddress());
-        // counting from the SC register
-        Bit[] counted = CombinationalLogic.count(this.SC.read(),
-                BranchResult.isTaken(actual), CountMode.SATURATING);
-        // updating our cache
-        PHT.put(BHR.read(), counted);
-        // updating the BHR
-        BHR.insert(Bit.of(BranchResult.isTaken(actual)));
-        PABHR.write(instruction.getInstructionAddress(), BHR.read());
-    }
-
-    /**
-     * @return a zero series of bits as default value of cache block
+     * Creates a new PAg predictor which indexes the PHT with the given function, the PABHR is still selected by
+     * the branch address
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param indexFunction         maps the branch address and its BHR value to the PHT entry
      */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
-    }
-
-    @Override
-    public String monitor() {
-        return "PAg predictor snapshot: \n" + PABHR.monitor() + SC.monitor() + PHT.monitor();
+    public PAg(int BHRSize, int SCSize, int branchInstructionSize, IndexFunction indexFunction) {
+        // Initialize the PHT with a size of 2^size and each entry having a saturating
+        // counter of size "SCSize"
+        super("PAg", BHRSize, branchInstructionSize, 0, null, false, indexFunction,
+                new FlatPageHistoryTable(1 << (BHRSize + indexFunction.selectorBits()), SCSize));
     }
 }
@@ -1,96 +1,49 @@
 package hardwar.branch.prediction.judged.PAp;
 
 
-import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.judged.RegisterBankPredictor;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
-
-public class PAp implements BranchPredictor {
-
-    private final int branchInstructionSize;
-
-    private final ShiftRegister SC; // saturating counter register
-
-    private final RegisterBank PABHR; // per address branch history register
-
-    private final Cache<Bit[], Bit[]> PAPHT; // Per Address Predication History Table
+public class PAp extends RegisterBankPredictor {
 
     public PAp() {
         this(4, 2, 8);
     }
 
     public PAp(int BHRSize, int SCSize, int branchInstructionSize) {
-        // TODO: complete the constructor
-        this.branchInstructionSize = branchInstructionSize;
-
-
-        // Initialize the PABHR with the given bhr and branch instruction size
-        PABHR = new RegisterBank(branchInstructionSize, BHRSize);
+        this(BHRSize, SCSize, branchInstructionSize, IndexFunctions.concat(branchInstructionSize, BHRSize));
+    }
 
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which select the PABHR register
+     * @param indexFunction         maps the branch address and its BHR value to the PAPHT entry, the selector
+     *                              bits of the function select the PHT
+     */
+    public PAp(int BHRSize, int SCSize, int branchInstructionSize, IndexFunction indexFunction) {
         // Initializing the PAPHT with K bit as PHT selector and 2^BHRSize row as each
         // PHT entries
         // number and SCSize as block size
-        PAPHT = new PerAddressPredictionHistoryTable(
-                branchInstructionSize, 1 << BHRSize, SCSize);
-
-        // Initialize the saturating counter
-        this.SC = new SIPORegister("SC", SCSize, null);
-    }
-
-    @Override
-    public BranchResult predict(BranchInstruction branchInstruction) {
-        // get BHR value
-        ShiftRegister BHR = PABHR.read(branchInstruction.getInstructionAddress());
-        // concatenate the instruction address
-        // hashing the address
-        Bit[] hash = getCacheEntry(branchInstruction.getInstructionAddress(), BHR.read());
-
-        // initialize the PHT if empty
-        PAPHT.putIfAbsent(hash, getDefaultBlock());
-        // read from the cache
-        Bit[] block = PAPHT.get(hash);
-        // load into the SC register
-        SC.load(block);
-        return BranchResult.of(block[0].getValue());
-    }
-
-    @Override
-    public void update(BranchInstruction instruction, BranchResult actual) {
-        // counting from the SC register
-        Bit[] counted = CombinationalLogic.count(this.SC.read(),
-                BranchResult.isTaken(actual), CountMode.SATURATING);
-        // updating our cache
-        // get BHR value
-        ShiftRegister BHR = PABHR.read(instruction.getInstructionAddress());
-        Bit[] hash = getCacheEntry(instruction.getInstructionAddress(), BHR.read());
-
-        PAPHT.put(hash, counted);
-        // updating the BHR
-        BHR.insert(Bit.of(BranchResult.isTaken(actual)));
-        PABHR.write(instruction.getInstructionAddress(), BHR.read());
-    }
-
-
-    private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
-        // Concatenate the branch address bits with the BHR bits
-        Bit[] cacheEntry = new Bit[branchAddress.length + BHRValue.length];
-        System.arraycopy(branchAddress, 0, cacheEntry, 0, branchInstructionSize);
-        System.arraycopy(BHRValue, 0, cacheEntry, branchAddress.length, BHRValue.length);
-        return cacheEntry;
+        this(BHRSize, SCSize, branchInstructionSize, indexFunction, PerAddressPredictionHistoryTable.create(
+                indexFunction.selectorBits(), 1 << BHRSize, SCSize));
     }
 
     /**
-     * @return a zero series of bits as default value of cache block
+     * Creates a new PAp predictor on the given PAPHT, e.g. a PAPHT which is saved in an off heap table for
+     * large address sizes. The caller closes the table.
+     *
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value, it must be
+     *                              the block size of the PAPHT
+     * @param branchInstructionSize the number of bits which select the PABHR register
+     * @param indexFunction         maps the branch address and its BHR value to the PAPHT entry
+     * @param PAPHT                 the table with 2^BHRSize rows for each selector of the index function
+     * @throws IllegalArgumentException if the block size of the PAPHT is not SCSize
      */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
-    }
-
-    @Override
-    public String monitor() {
-        return "PAp predictor snapshot: \n" + PABHR.monitor() + SC.monitor() + PAPHT.monitor();
+    public PAp(int BHRSize, int SCSize, int branchInstructionSize, IndexFunction indexFunction, IndexedCache PAPHT) {
+        // the PAPHT is indexed by the address bits which select the PABHR register
+        super("PAp", BHRSize, branchInstructionSize, 0, null, true, indexFunction,
+                IndexedCache.requireColumns(PAPHT, SCSize));
     }
 }
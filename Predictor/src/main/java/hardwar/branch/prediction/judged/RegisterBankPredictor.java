@@ -0,0 +1,296 @@
+package hardwar.branch.prediction.judged;
+
+/*
+ * the common flow of the per address (PAg, PAp and PAs) and per set (SAg, SAp and SAs) history predictors
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the history registers are a register bank. the selector of a branch is its branchInstructionSize address
+ * bits (per address), or the KSize bit hash of them (per set).
+ *
+ * 2) the index function maps the branch address, or the selector if the table is indexed by the selector, and
+ * the history register of the branch to the table entry. the predictors differ only in their selector, their
+ * table and their index function, which are given to the constructor.
+ *
+ * 3) the selector is computed from fields and not by an overridden method, so the simulate loop stays one
+ * loop for all the predictors.
+ *
+ * 4) the block size of the table is the size of the SC register.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.AliasingDetector;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.PredictionHandle;
+import hardwar.branch.prediction.shared.PredictorMetrics;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+import hardwar.branch.prediction.shared.devices.CombinationalLogic;
+import hardwar.branch.prediction.shared.devices.IndexFunction;
+import hardwar.branch.prediction.shared.devices.IndexedCache;
+import hardwar.branch.prediction.shared.devices.RegisterBank;
+import hardwar.branch.prediction.shared.devices.SIPORegister;
+import hardwar.branch.prediction.shared.devices.ShiftRegister;
+
+import java.io.IOException;
+
+public abstract class RegisterBankPredictor implements BranchPredictor {
+    private final String name; // the name of the predictor in its monitor
+    private final int branchInstructionSize;
+    private final int KSize; // the size of the set hash, unused per address
+    private final HashMode hashMode; // the hash of the set, null if the selector is the address itself
+    private final boolean indexBySelector; // if true the index function gets the selector instead of the address
+    private final ShiftRegister SC; // saturating counter register
+    private final RegisterBank bank; // the PABHR or PSBHR
+    private final IndexedCache table; // the PHT, PAPHT or PSPHT
+    private final IndexFunction indexFunction; // maps the address and its BHR to the table entry
+    private final PredictorMetrics metrics; // prediction and table counters
+    private AliasingDetector aliasing; // shadow tags of the table, null if the aliasing is not detected
+
+    /**
+     * @param name                  the name of the predictor, e.g. PAg
+     * @param BHRSize               the size of the BHR registers
+     * @param branchInstructionSize the number of address bits which select, or are hashed to, the BHR register
+     * @param KSize                 the number of bits of the set hash which selects the BHR register
+     * @param hashMode              the hash of the set, null if the address bits select the BHR register
+     * @param indexBySelector       if true the index function maps the selector instead of the full address
+     * @param indexFunction         maps the branch address and its BHR value to the table entry
+     * @param table                 the table with 2^BHRSize rows for each selector of the index function
+     */
+    protected RegisterBankPredictor(String name, int BHRSize, int branchInstructionSize, int KSize,
+                                    HashMode hashMode, boolean indexBySelector, IndexFunction indexFunction,
+                                    IndexedCache table) {
+        this.name = name;
+        this.branchInstructionSize = branchInstructionSize;
+        this.KSize = KSize;
+        this.hashMode = hashMode;
+        this.indexBySelector = indexBySelector;
+        this.indexFunction = indexFunction;
+
+        // Initialize the register bank with the given bhr size and selector size
+        this.bank = new RegisterBank(hashMode == null ? branchInstructionSize : KSize, BHRSize);
+
+        this.table = table;
+
+        // Initialize the saturating counter
+        this.SC = new SIPORegister("SC", table.getColumns(), null);
+
+        // the counters of predictions and table accesses
+        this.metrics = new PredictorMetrics(table, bank);
+    }
+
+    /**
+     * @param branchInstruction the branch instruction
+     * @return the predicted outcome of the branch instruction (taken or not taken)
+     */
+    @Override
+    public BranchResult predict(BranchInstruction branchInstruction) {
+        return BranchResult.of(predict(BitVector.toLong(branchInstruction.getInstructionAddress())));
+    }
+
+    /**
+     * @param instruction the branch instruction
+     * @param actual      the actual result of branch (taken or not)
+     */
+    @Override
+    public void update(BranchInstruction instruction, BranchResult actual) {
+        update(BitVector.toLong(instruction.getInstructionAddress()), BranchResult.isTaken(actual));
+    }
+
+    /**
+     * @param instructionAddress the branchInstructionSize bits of the branch address
+     * @return true if the branch is predicted as taken
+     */
+    @Override
+    public boolean predict(long instructionAddress) {
+        metrics.recordPrediction();
+        long selector = selectorOf(instructionAddress);
+        // read the block associated with the address and its BHR, initialize the table if empty
+        int block = table.setDefault(indexOf(instructionAddress, selector), 0);
+        // load into the SC register
+        SC.loadBits(block);
+        return isTaken(block);
+    }
+
+    /**
+     * @param instructionAddress the branchInstructionSize bits of the branch address
+     * @param taken              the actual result of branch
+     */
+    @Override
+    public void update(long instructionAddress, boolean taken) {
+        metrics.recordUpdate(isTaken((int) SC.readBits()) != taken);
+        long selector = selectorOf(instructionAddress);
+        // counting from the SC register
+        int counted = CombinationalLogic.count((int) SC.readBits(), SC.getLength(), taken, CountMode.SATURATING);
+        // updating our cache
+        long index = indexOf(instructionAddress, selector);
+        table.put(index, counted);
+        if (aliasing != null) aliasing.observe(instructionAddress, index, (int) SC.readBits(), taken);
+        // updating the BHR in place
+        bank.shiftIn(selector, taken);
+    }
+
+    /**
+     * the counter and its entry are kept in the handle, the SC register is not used
+     */
+    @Override
+    public boolean predict(long instructionAddress, PredictionHandle handle) {
+        metrics.recordPrediction();
+        long selector = selectorOf(instructionAddress);
+        long index = indexOf(instructionAddress, selector);
+        int block = table.setDefault(index, 0);
+        return handle.load(instructionAddress, index, selector, block, isTaken(block));
+    }
+
+    @Override
+    public void update(PredictionHandle handle, boolean taken) {
+        metrics.recordUpdate(handle.isPredictedTaken() != taken);
+        int counted = CombinationalLogic.count(handle.getCounter(), SC.getLength(), taken, CountMode.SATURATING);
+        table.put(handle.getIndex(), counted);
+        if (aliasing != null)
+            aliasing.observe(handle.getInstructionAddress(), handle.getIndex(), handle.getCounter(), taken);
+        bank.shiftIn(handle.getSelector(), taken);
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        return BranchResult.of(predictAndUpdate(BitVector.toLong(instruction.getInstructionAddress()),
+                BranchResult.isTaken(actual)));
+    }
+
+    /**
+     * predicts the branch and trains it with one read-modify-write of the table
+     *
+     * @param instructionAddress the branchInstructionSize bits of the branch address
+     * @param taken              the actual result of branch
+     * @return true if the branch was predicted as taken, before the update
+     */
+    @Override
+    public boolean predictAndUpdate(long instructionAddress, boolean taken) {
+        long selector = selectorOf(instructionAddress);
+        // read and count the block associated with the address and its BHR
+        long index = indexOf(instructionAddress, selector);
+        int block = table.getAndCount(index, 0, taken, CountMode.SATURATING);
+        if (aliasing != null) aliasing.observe(instructionAddress, index, block, taken);
+        // load the predicted block into the SC register
+        SC.loadBits(block);
+        // updating the BHR in place
+        bank.shiftIn(selector, taken);
+        metrics.record(isTaken(block) != taken);
+        return isTaken(block);
+    }
+
+    /**
+     * replays the chunk with the tables and parameters held in locals
+     *
+     * @param pcs            the branch instruction addresses as numbers
+     * @param outcomes       the actual results of branches
+     * @param from           the index of the first branch, inclusive
+     * @param to             the index of the last branch, exclusive
+     * @param predictionsOut receives the prediction of branch i at index i, may be null
+     * @return the number of mispredicted branches in the chunk
+     */
+    @Override
+    public int simulate(long[] pcs, boolean[] outcomes, int from, int to, boolean[] predictionsOut) {
+        if (from >= to) return 0;
+        final IndexedCache table = this.table;
+        final RegisterBank bank = this.bank;
+        final int counterMSB = SC.getLength() - 1;
+        final int addressSize = branchInstructionSize;
+        final long addressMask = (1L << addressSize) - 1;
+        final int hashSize = KSize;
+        final HashMode mode = hashMode;
+        final boolean bySelector = indexBySelector;
+        final IndexFunction function = indexFunction;
+        // the detector observes only the sampled chunks
+        final AliasingDetector detector = aliasing != null && aliasing.begin(to - from) ? aliasing : null;
+        int block = 0;
+        int mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean taken = outcomes[i];
+            long selector = mode == null ? pcs[i] & addressMask
+                    : CombinationalLogic.hash(pcs[i], addressSize, hashSize, mode);
+            long index = function.index(bySelector ? selector : pcs[i], bank.readBits(selector));
+            block = table.getAndCount(index, 0, taken, CountMode.SATURATING);
+            if (detector != null) detector.record(pcs[i], index, block, taken);
+            boolean prediction = (block >>> counterMSB) != 0;
+            if (predictionsOut != null) predictionsOut[i] = prediction;
+            if (prediction != taken) mispredictions++;
+            bank.shiftIn(selector, taken);
+        }
+        SC.loadBits(block);
+        if (detector != null) detector.end();
+        metrics.record(to - from, mispredictions);
+        return mispredictions;
+    }
+
+    /**
+     * @param branchAddress the branch address
+     * @return the BHR register of the branch: its address bits, or the hash of them
+     */
+    private long selectorOf(long branchAddress) {
+        if (hashMode == null) return branchAddress & ((1L << branchInstructionSize) - 1);
+        return CombinationalLogic.hash(branchAddress, branchInstructionSize, KSize, hashMode);
+    }
+
+    /**
+     * @param branchAddress the branch address
+     * @param selector      the BHR register of the branch
+     * @return the table entry of the branch and its BHR
+     */
+    private long indexOf(long branchAddress, long selector) {
+        return indexFunction.index(indexBySelector ? selector : branchAddress, bank.readBits(selector));
+    }
+
+    /**
+     * @param block the saturating counter value
+     * @return the MSB of the counter
+     */
+    private boolean isTaken(int block) {
+        return (block >>> (SC.getLength() - 1)) != 0;
+    }
+
+    @Override
+    public PredictorMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void setAliasingDetector(AliasingDetector detector) {
+        this.aliasing = detector;
+        metrics.setAliasingDetector(detector);
+    }
+
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        saveContext(out);
+        table.snapshot(out);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        restoreContext(in);
+        table.restore(in);
+    }
+
+    @Override
+    public void saveContext(SnapshotOutput out) throws IOException {
+        bank.snapshot(out);
+        SC.snapshot(out);
+    }
+
+    @Override
+    public void restoreContext(SnapshotInput in) throws IOException {
+        bank.restore(in);
+        SC.restore(in);
+    }
+
+    @Override
+    public String monitor() {
+        return name + " predictor snapshot: \n" + bank.monitor() + SC.monitor() + table.monitor();
+    }
+}
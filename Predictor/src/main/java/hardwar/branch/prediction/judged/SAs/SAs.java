@@ -1,103 +1,35 @@
 package hardwar.branch.prediction.judged.SAs;
 
-import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.judged.RegisterBankPredictor;
+import hardwar.branch.prediction.shared.HashMode;
 import hardwar.branch.prediction.shared.devices.*;
 
-import java.util.Arrays;
-
-public class SAs implements BranchPredictor {
-
-    private final int branchInstructionSize;
-    private final int KSize;
-    private final ShiftRegister SC;
-    private final RegisterBank PSBHR; // per set branch history register
-    private final Cache<Bit[], Bit[]> PSPHT; // per set predication history table
-    private final HashMode hashMode;
+public class SAs extends RegisterBankPredictor {
 
     public SAs() {
         this(4, 2, 8, 4, HashMode.XOR);
     }
 
     public SAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode) {
-        this.branchInstructionSize = branchInstructionSize;
-        this.KSize = KSize;
-        this.hashMode = hashMode;
-
-        // Initialize the PSBHR with the given bhr and branch instruction size
-        PSBHR = new RegisterBank(KSize, BHRSize);
-
-        // Initializing the PAPHT with K bit as PHT selector and 2^BHRSize row as each
-        // PHT entries
-        // number and SCSize as block size
-        PSPHT = new PerAddressPredictionHistoryTable(
-                KSize, 1 << BHRSize, SCSize);
-
-        // Initialize the saturating counter
-        this.SC = new SIPORegister("SC", SCSize, null);
-    }
-
-    @Override
-    public BranchResult predict(BranchInstruction branchInstruction) {
-        // get BHR value
-        Bit[] address = getAddressLine(branchInstruction.getInstructionAddress());
-        ShiftRegister BHR = PSBHR.read(address);
-        // concatenate the instruction address
-        // hashing the address
-        Bit[] hash = getCacheEntry(branchInstruction.getInstructionAddress(), BHR.read());
-        
-        // initialize the PHT if empty
-        PSPHT.putIfAbsent(hash, getDefaultBlock());
-        // read from the cache
-        Bit[] block = PSPHT.get(hash);
-        // load into the SC register
-        SC.load(block);
-        return BranchResult.of(block[0].getValue());
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode,
+                IndexFunctions.hashConcat(branchInstructionSize, KSize, hashMode, BHRSize));
     }
 
-    @Override
-    public void update(BranchInstruction branchInstruction, BranchResult actual) {
-        // counting from the SC register
-        Bit[] counted = CombinationalLogic.count(this.SC.read(),
-                BranchResult.isTaken(actual), CountMode.SATURATING);
-        // updating our cache
-        // get BHR value
-        Bit[] address = getAddressLine(branchInstruction.getInstructionAddress());
-        ShiftRegister BHR = PSBHR.read(address);
-        Bit[] hash = getCacheEntry(branchInstruction.getInstructionAddress(), BHR.read());
-
-        PSPHT.put(hash, counted);
-        // updating the BHR
-        BHR.insert(Bit.of(BranchResult.isTaken(actual)));
-        PSBHR.write(address, BHR.read());
-    }
-
-    private Bit[] getAddressLine(Bit[] branchAddress) {
-        // hash the branch address
-        return CombinationalLogic.hash(branchAddress, KSize, hashMode);
-    }
-
-    private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
-        // hash the branch address
-        Bit[] hashKSize = CombinationalLogic.hash(branchAddress, KSize, hashMode);
-
-        // Concatenate the Hash bits with the BHR bits
-        Bit[] cacheEntry = new Bit[hashKSize.length + BHRValue.length];
-        System.arraycopy(hashKSize, 0, cacheEntry, 0, hashKSize.length);
-        System.arraycopy(BHRValue, 0, cacheEntry, hashKSize.length, BHRValue.length);
-
-        return cacheEntry;
-    }
     /**
-     * @return a zero series of bits as default value of cache block
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the set hash which selects the PSBHR register
+     * @param hashMode              the hash of the set
+     * @param indexFunction         maps the branch address and the BHR value of its set to the PSPHT entry, the
+     *                              selector bits of the function select the PHT
      */
-    private Bit[] getDefaultBlock() {
-        Bit[] defaultBlock = new Bit[SC.getLength()];
-        Arrays.fill(defaultBlock, Bit.ZERO);
-        return defaultBlock;
-    }
-
-    @Override
-    public String monitor() {
-        return null;
+    public SAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               IndexFunction indexFunction) {
+        // Initializing the PAPHT with K bit as PHT selector and 2^BHRSize row as each
+        // PHT entries
+        // number and SCSize as block size
+        super("SAs", BHRSize, branchInstructionSize, KSize, hashMode, false, indexFunction,
+                PerAddressPredictionHistoryTable.create(indexFunction.selectorBits(), 1 << BHRSize, SCSize));
     }
 }
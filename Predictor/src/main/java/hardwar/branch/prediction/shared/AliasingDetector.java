@@ -0,0 +1,232 @@
+package hardwar.branch.prediction.shared;
+
+/*
+ * shadow tag model of the aliasing in a prediction table
+ * read below assumptions about the aliasing detector
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) only the sampled table entries are observed, an entry is sampled if the low sampleBits bits of its hash
+ * are zero. so each sampled entry is observed on every access and the other entries cost one multiply.
+ * the simulate loops also observe only one of 2^windowBits chunks, the other chunks run without the detector.
+ * the shadow tags are forgotten at the start of each observed chunk, the trainers of the skipped chunks are unknown.
+ *
+ * 2) the shadow tags remember the branch address which trained each sampled entry last, in a direct mapped
+ * array. an entry which loses its slot to another sampled entry starts again without a trainer.
+ *
+ * 3) an access is aliased if the entry was trained last by another branch address. the aliased access is
+ * compared with a private counter of the branch address and the entry, which no other branch trains:
+ * it is constructive if only the shared counter predicts the branch correctly, destructive if only the
+ * private counter does, and neutral otherwise.
+ *
+ * 4) the private counters are saturating counters of counterBits bits which start from zero like the table
+ * blocks, saved in a direct mapped array with a 64 bit hash as their tag.
+ *
+ * 5) the counters are not synchronized, they can be read from another thread but the reader may see a stale value.
+ * -------------------------------------------------------
+ */
+
+import java.util.Arrays;
+
+public class AliasingDetector implements Monitorable {
+    public static final int DEFAULT_SAMPLE_BITS = 5;
+    public static final int DEFAULT_WINDOW_BITS = 3;
+    public static final int DEFAULT_SLOT_BITS = 12;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final int TAKEN_FLAG = 1 << Byte.SIZE; // above the counter bits of a recorded training
+
+    private final int counterBits;
+    private final int counterMax;
+    private final int sampleBits;
+    private final long sampleMask;
+    private final int windowMask;
+    private final int slotMask;
+    private final long[] shadowEntries; // entry + 1 of each slot, zero if the slot is empty
+    private final long[] shadowTrainers; // the branch address which trained the entry last
+    private final long[] privateTags; // hash of the branch address and the entry, zero if the counter is empty
+    private final byte[] privateCounters;
+    private long[] pendingAddresses = new long[0]; // sampled trainings of the chunk, they are observed by end
+    private long[] pendingEntries = new long[0];
+    private int[] pendingCounters = new int[0]; // the block, and TAKEN_FLAG if the branch is taken
+    private int pending;
+    private int chunks; // number of chunks which are started
+
+    private long sampled;
+    private long aliased;
+    private long constructive;
+    private long destructive;
+
+    /**
+     * @param counterBits the block size of the table
+     */
+    public AliasingDetector(int counterBits) {
+        this(counterBits, DEFAULT_SAMPLE_BITS, DEFAULT_WINDOW_BITS, DEFAULT_SLOT_BITS);
+    }
+
+    /**
+     * @param counterBits the block size of the table, between 1 and 8
+     * @param sampleBits  one of 2^sampleBits table entries is observed
+     * @param windowBits  one of 2^windowBits chunks of the simulate loops is observed
+     * @param slotBits    the shadow tags have 2^slotBits slots, the private counters have four times more
+     */
+    public AliasingDetector(int counterBits, int sampleBits, int windowBits, int slotBits) {
+        if (counterBits <= 0 || counterBits > Byte.SIZE)
+            throw new IllegalArgumentException("counter size must be between 1 and " + Byte.SIZE + " bits");
+        if (sampleBits < 0 || sampleBits > 16)
+            throw new IllegalArgumentException("sample bits must be between 0 and 16");
+        if (windowBits < 0 || windowBits > 16)
+            throw new IllegalArgumentException("window bits must be between 0 and 16");
+        if (slotBits <= 0 || slotBits > 24) throw new IllegalArgumentException("slot bits must be between 1 and 24");
+        this.counterBits = counterBits;
+        this.counterMax = (1 << counterBits) - 1;
+        this.sampleBits = sampleBits;
+        this.sampleMask = (1L << sampleBits) - 1;
+        this.windowMask = (1 << windowBits) - 1;
+        this.slotMask = (1 << slotBits) - 1;
+        this.shadowEntries = new long[1 << slotBits];
+        this.shadowTrainers = new long[1 << slotBits];
+        this.privateTags = new long[4 << slotBits];
+        this.privateCounters = new byte[4 << slotBits];
+    }
+
+    /**
+     * observe a training of the table
+     *
+     * @param instructionAddress the branch address
+     * @param entry              the table entry of the branch
+     * @param counter            the block of the entry before the training, the prediction of the table
+     * @param taken              the actual result of branch
+     */
+    public void observe(long instructionAddress, long entry, int counter, boolean taken) {
+        long hash = entry * GOLDEN;
+        hash ^= hash >>> 32;
+        if ((hash & sampleMask) == 0) sample(instructionAddress, entry, hash, counter, taken);
+    }
+
+    /**
+     * start a chunk of trainings which are recorded by record and observed by end
+     *
+     * @param branches the maximum number of trainings in the chunk
+     * @return true if the chunk is observed, otherwise record and end must not be called for the chunk
+     */
+    public boolean begin(int branches) {
+        if ((chunks++ & windowMask) != 0) return false;
+        Arrays.fill(shadowEntries, 0L);
+        if (pendingEntries.length < branches) {
+            pendingAddresses = new long[branches];
+            pendingEntries = new long[branches];
+            pendingCounters = new int[branches];
+        }
+        pending = 0;
+        return true;
+    }
+
+    /**
+     * record a training of the chunk. the sampled trainings are only copied, so the simulate loops do not call
+     * out of line and keep the tables in registers.
+     *
+     * @param instructionAddress the branch address
+     * @param entry              the table entry of the branch
+     * @param counter            the block of the entry before the training, the prediction of the table
+     * @param taken              the actual result of branch
+     */
+    public void record(long instructionAddress, long entry, int counter, boolean taken) {
+        long hash = entry * GOLDEN;
+        if (((hash ^ hash >>> 32) & sampleMask) != 0) return;
+        int n = pending++;
+        pendingAddresses[n] = instructionAddress;
+        pendingEntries[n] = entry;
+        pendingCounters[n] = taken ? counter | TAKEN_FLAG : counter;
+    }
+
+    /**
+     * observe the recorded trainings of the chunk in order
+     */
+    public void end() {
+        for (int n = 0; n < pending; n++) {
+            long entry = pendingEntries[n];
+            long hash = entry * GOLDEN;
+            int counter = pendingCounters[n];
+            boolean taken = (counter & TAKEN_FLAG) != 0;
+            sample(pendingAddresses[n], entry, hash ^ hash >>> 32, counter & ~TAKEN_FLAG, taken);
+        }
+        pending = 0;
+    }
+
+    private void sample(long instructionAddress, long entry, long hash, int counter, boolean taken) {
+        sampled++;
+
+        // the private counter of this branch address in this entry
+        long tag = (instructionAddress * GOLDEN ^ entry) * GOLDEN | 1L;
+        int p = (int) (tag >>> 40) & privateCounters.length - 1;
+        int own = privateTags[p] == tag ? privateCounters[p] : 0;
+
+        int slot = (int) (hash >>> sampleBits) & slotMask;
+        if (shadowEntries[slot] != entry + 1) {
+            shadowEntries[slot] = entry + 1;
+        } else if (shadowTrainers[slot] != instructionAddress) {
+            aliased++;
+            boolean shared = (counter >>> (counterBits - 1)) != 0;
+            boolean alone = (own >>> (counterBits - 1)) != 0;
+            if (shared == taken && alone != taken) constructive++;
+            else if (shared != taken && alone == taken) destructive++;
+        }
+        shadowTrainers[slot] = instructionAddress;
+
+        privateTags[p] = tag;
+        privateCounters[p] = (byte) (taken ? Math.min(own + 1, counterMax) : Math.max(own - 1, 0));
+    }
+
+    /**
+     * @return number of observed accesses
+     */
+    public long getSampledAccesses() {
+        return sampled;
+    }
+
+    /**
+     * @return number of observed accesses to an entry which is trained last by another branch
+     */
+    public long getAliasedAccesses() {
+        return aliased;
+    }
+
+    /**
+     * @return number of aliased accesses which are predicted correctly only because of the aliasing
+     */
+    public long getConstructive() {
+        return constructive;
+    }
+
+    /**
+     * @return number of aliased accesses which are mispredicted only because of the aliasing
+     */
+    public long getDestructive() {
+        return destructive;
+    }
+
+    /**
+     * @return the fraction of the observed accesses which are mispredicted because of the aliasing
+     */
+    public double getDestructiveRate() {
+        return sampled == 0 ? 0 : (double) destructive / sampled;
+    }
+
+    /**
+     * forget the shadow tags and the private counters and reset the counters
+     */
+    public void reset() {
+        Arrays.fill(shadowEntries, 0L);
+        Arrays.fill(privateTags, 0L);
+        chunks = 0;
+        sampled = 0;
+        aliased = 0;
+        constructive = 0;
+        destructive = 0;
+    }
+
+    @Override
+    public String monitor() {
+        return String.format("Aliasing: sampled=%d aliased=%d constructive=%d destructive=%d (%.4f%%)%n",
+                sampled, aliased, constructive, destructive, 100 * getDestructiveRate());
+    }
+}
@@ -0,0 +1,258 @@
+package hardwar.branch.prediction.shared;
+
+/*
+ * our packed bit vector model
+ * read below assumptions about pre-defined BitVector
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the vector is immutable. every operation which changes the bits returns a new vector.
+ *
+ * 2) the bit order is as same as Bit arrays, the most significant bit is the first bit of the vector
+ * i.e. get(0) is the MSB and get(length - 1) is the LSB
+ *
+ * 3) the first 64 bits (the least significant ones) are saved in a long word. if the vector is longer
+ * than 64 bits, the remaining bits are saved in the overflow words.
+ * ------------------------------------------------------
+ */
+
+import java.util.Arrays;
+
+public final class BitVector {
+    static final int WORD_SIZE = 64;
+
+    private final int length; // number of bits in the vector
+    private final long word; // the least significant 64 bits
+    private final long[] overflow; // the bits above the first word, null if length <= 64
+
+    private BitVector(int length, long word, long[] overflow) {
+        this.length = length;
+        this.word = word;
+        this.overflow = overflow;
+    }
+
+    /**
+     * @param length number of bits
+     * @return a zero filled vector with the given length
+     */
+    public static BitVector zeros(int length) {
+        checkLength(length);
+        return new BitVector(length, 0L, length > WORD_SIZE ? new long[overflowWords(length)] : null);
+    }
+
+    /**
+     * Creates a vector from the least significant `length` bits of the value.
+     *
+     * @param value  the numeric value of the vector
+     * @param length number of bits
+     * @return the packed vector
+     */
+    public static BitVector of(long value, int length) {
+        checkLength(length);
+        return new BitVector(length, value & mask(length), length > WORD_SIZE ? new long[overflowWords(length)] : null);
+    }
+
+    /**
+     * Packs a Bit array into a vector. The first element of the array is the most significant bit.
+     *
+     * @param bits the bit array
+     * @return the packed vector
+     */
+    public static BitVector of(Bit[] bits) {
+        int length = bits.length;
+        if (length <= WORD_SIZE) return new BitVector(length, toLong(bits), null);
+
+        long[] words = new long[wordCount(length)];
+        for (int i = 0; i < length; i++) {
+            if (bits[i] == Bit.ONE) setBit(words, length - 1 - i);
+        }
+        return fromWords(length, words);
+    }
+
+    /**
+     * Converts the least significant 64 bits of a Bit array to a number without packing the whole array.
+     *
+     * @param bits the bit array
+     * @return the numeric value of the last 64 bits of the array
+     */
+    public static long toLong(Bit[] bits) {
+        long result = 0;
+        for (Bit bit : bits)
+            result = (result << 1) | (bit == Bit.ONE ? 1 : 0);
+        return result;
+    }
+
+    /**
+     * @return number of bits in the vector
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @param index the index of the bit, 0 is the most significant bit
+     * @return the bit at the given index
+     */
+    public Bit get(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("bit index " + index + " is out of vector bounds");
+        return Bit.of(testBit(length - 1 - index));
+    }
+
+    /**
+     * @return the least significant 64 bits of the vector as a number
+     */
+    public long toLong() {
+        return word;
+    }
+
+    /**
+     * @return the least significant 32 bits of the vector as a number
+     */
+    public int toInt() {
+        return (int) word;
+    }
+
+    /**
+     * @return a new Bit array with the same bits as the vector
+     */
+    public Bit[] toBits() {
+        Bit[] bits = new Bit[length];
+        for (int i = 0; i < length; i++) {
+            bits[i] = Bit.of(testBit(length - 1 - i));
+        }
+        return bits;
+    }
+
+    /**
+     * Inserts a new bit at the beginning of the vector and shifts all existing bits to the right,
+     * the last bit is dropped. This is the same behavior as the SIPO register insert.
+     *
+     * @param bit the new most significant bit
+     * @return the shifted vector
+     */
+    public BitVector insert(Bit bit) {
+        if (length == 0) return this;
+        if (overflow == null) {
+            long shifted = (word >>> 1) | (bit == Bit.ONE ? 1L << (length - 1) : 0L);
+            return new BitVector(length, shifted, null);
+        }
+        long[] words = toWords();
+        shiftRightOne(words);
+        if (bit == Bit.ONE) setBit(words, length - 1);
+        return fromWords(length, words);
+    }
+
+    /**
+     * @param other the vector which is appended after the bits of this vector
+     * @return the concatenated vector, the bits of this vector are the most significant ones
+     */
+    public BitVector concat(BitVector other) {
+        int newLength = length + other.length;
+        if (newLength <= WORD_SIZE) {
+            long high = other.length == WORD_SIZE ? 0L : word << other.length;
+            return new BitVector(newLength, high | other.word, null);
+        }
+        long[] words = new long[wordCount(newLength)];
+        for (int p = 0; p < other.length; p++) {
+            if (other.testBit(p)) setBit(words, p);
+        }
+        for (int p = 0; p < length; p++) {
+            if (testBit(p)) setBit(words, p + other.length);
+        }
+        return fromWords(newLength, words);
+    }
+
+    /**
+     * @param from the first index (inclusive)
+     * @param to   the last index (exclusive)
+     * @return the bits between from and to as a new vector
+     */
+    public BitVector slice(int from, int to) {
+        if (from < 0 || to > length || from > to)
+            throw new IndexOutOfBoundsException("invalid slice [" + from + ", " + to + ") of a " + length + " bit vector");
+        int newLength = to - from;
+        int lowest = length - to; // position of the new least significant bit
+        if (overflow == null) {
+            long shifted = lowest == WORD_SIZE ? 0L : word >>> lowest;
+            return new BitVector(newLength, shifted & mask(newLength), null);
+        }
+        long[] words = new long[wordCount(newLength)];
+        for (int p = 0; p < newLength; p++) {
+            if (testBit(p + lowest)) setBit(words, p);
+        }
+        return fromWords(newLength, words);
+    }
+
+    private boolean testBit(int position) {
+        long w = position < WORD_SIZE ? word : overflow[(position >>> 6) - 1];
+        return ((w >>> (position & 63)) & 1L) == 1L;
+    }
+
+    private long[] toWords() {
+        long[] words = new long[wordCount(length)];
+        words[0] = word;
+        if (overflow != null) System.arraycopy(overflow, 0, words, 1, overflow.length);
+        return words;
+    }
+
+    static BitVector fromWords(int length, long[] words) {
+        if (length <= WORD_SIZE) return new BitVector(length, words.length == 0 ? 0L : words[0], null);
+        return new BitVector(length, words[0], Arrays.copyOfRange(words, 1, words.length));
+    }
+
+    static long mask(int length) {
+        return length >= WORD_SIZE ? -1L : (1L << length) - 1;
+    }
+
+    static int wordCount(int length) {
+        return Math.max(1, (length + WORD_SIZE - 1) / WORD_SIZE);
+    }
+
+    static int overflowWords(int length) {
+        return wordCount(length) - 1;
+    }
+
+    static void setBit(long[] words, int position) {
+        words[position >>> 6] |= 1L << (position & 63);
+    }
+
+    static void clearBit(long[] words, int position) {
+        words[position >>> 6] &= ~(1L << (position & 63));
+    }
+
+    static void shiftRightOne(long[] words) {
+        for (int w = 0; w < words.length - 1; w++) {
+            words[w] = (words[w] >>> 1) | (words[w + 1] << 63);
+        }
+        words[words.length - 1] >>>= 1;
+    }
+
+    private static void checkLength(int length) {
+        if (length < 0) throw new IllegalArgumentException("vector length can not be negative");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BitVector)) return false;
+        BitVector that = (BitVector) o;
+        return length == that.length && word == that.word && Arrays.equals(overflow, that.overflow);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * length + Long.hashCode(word)) + Arrays.hashCode(overflow);
+    }
+
+    /**
+     * @return the binary string of the vector, as same as Bit.arrayToString
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        for (int p = length - 1; p >= 0; p--) {
+            sb.append(testBit(p) ? '1' : '0');
+        }
+        return sb.toString();
+    }
+}
@@ -1,6 +1,8 @@
 package hardwar.branch.prediction.shared;
 
-public interface BranchPredictor extends Monitorable {
+import java.io.IOException;
+
+public interface BranchPredictor extends Monitorable, Snapshotable {
     /**
      * Predict if the branch is taken or not
      *
@@ -16,4 +18,159 @@ public interface BranchPredictor extends Monitorable {
      * @param result      the actual result of branch (taken or not)
      */
     void update(BranchInstruction instruction, BranchResult result);
+
+    /**
+     * Predict if the branch is taken or not, without building a branch instruction.
+     *
+     * @param instructionAddress the branch instruction address as a number, the first address bit is the MSB
+     * @return true if the branch is predicted as taken
+     */
+    boolean predict(long instructionAddress);
+
+    /**
+     * The dynamic predictor will update its state based on the branch condition result,
+     * without building a branch instruction.
+     *
+     * @param instructionAddress the branch instruction address as a number, the first address bit is the MSB
+     * @param taken              the actual result of branch
+     */
+    void update(long instructionAddress, boolean taken);
+
+    /**
+     * Predict if the branch is taken or not and keep the prediction state in the handle instead of the
+     * predictor, so several predictions can be in flight before they are updated. The handle must be given
+     * to {@link #update(PredictionHandle, boolean)} once the branch is resolved.
+     * <p>
+     * The default keeps only the address, so the predictions must still alternate with their updates.
+     *
+     * @param instructionAddress the branch instruction address as a number, the first address bit is the MSB
+     * @param handle             receives the state of the prediction
+     * @return true if the branch is predicted as taken
+     */
+    default boolean predict(long instructionAddress, PredictionHandle handle) {
+        boolean prediction = predict(instructionAddress);
+        return handle.load(instructionAddress, 0, 0, 0, prediction);
+    }
+
+    /**
+     * Update the predictor with the actual result of an in-flight prediction. The counter is counted from the
+     * value which is read at predict time and it is written back to the same entry, the history is shifted
+     * in the order of the updates.
+     *
+     * @param handle the handle which is filled by {@link #predict(long, PredictionHandle)}
+     * @param taken  the actual result of branch
+     */
+    default void update(PredictionHandle handle, boolean taken) {
+        update(handle.getInstructionAddress(), taken);
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result in one step. The result is as same as
+     * calling predict and then update, predictors override it to look up the branch state only once.
+     *
+     * @param instruction the branch instruction
+     * @param actual      the actual result of branch (taken or not)
+     * @return predicted result of branch, before the update
+     */
+    default BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        BranchResult prediction = predict(instruction);
+        update(instruction, actual);
+        return prediction;
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result in one step, without building
+     * a branch instruction.
+     *
+     * @param instructionAddress the branch instruction address as a number, the first address bit is the MSB
+     * @param taken              the actual result of branch
+     * @return true if the branch was predicted as taken, before the update
+     */
+    default boolean predictAndUpdate(long instructionAddress, boolean taken) {
+        boolean prediction = predict(instructionAddress);
+        update(instructionAddress, taken);
+        return prediction;
+    }
+
+    /**
+     * Replay a chunk of a trace through the predictor, predicting and updating each branch in order.
+     * The result is as same as calling predictAndUpdate for every branch, predictors override it to keep
+     * their tables and parameters in locals for the whole chunk.
+     *
+     * @param pcs            the branch instruction addresses as numbers
+     * @param outcomes       the actual results of branches
+     * @param from           the index of the first branch, inclusive
+     * @param to             the index of the last branch, exclusive
+     * @param predictionsOut receives the prediction of branch i at index i, may be null
+     * @return the number of mispredicted branches in the chunk
+     */
+    default int simulate(long[] pcs, boolean[] outcomes, int from, int to, boolean[] predictionsOut) {
+        int mispredictions = 0;
+        for (int i = from; i < to; i++) {
+            boolean prediction = predictAndUpdate(pcs[i], outcomes[i]);
+            if (predictionsOut != null) predictionsOut[i] = prediction;
+            if (prediction != outcomes[i]) mispredictions++;
+        }
+        return mispredictions;
+    }
+
+    /**
+     * The default is for the predictors which do not save their state, the judged predictors override it.
+     *
+     * @throws UnsupportedOperationException if the predictor does not save its state
+     */
+    @Override
+    default void snapshot(SnapshotOutput out) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not save its state");
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the predictor does not save its state
+     */
+    @Override
+    default void restore(SnapshotInput in) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not save its state");
+    }
+
+    /**
+     * the counters of the predictor, they can be read while the predictor is running
+     *
+     * @return the metrics of the predictor and its tables
+     * @throws UnsupportedOperationException if the predictor does not count its predictions
+     */
+    default PredictorMetrics getMetrics() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " has no metrics");
+    }
+
+    /**
+     * observe the table with shadow tags, to count the constructive and destructive aliasing of its entries
+     *
+     * @param detector the aliasing detector of the table, null stops the detection
+     * @throws UnsupportedOperationException if the predictor can not be observed, the default stops nothing
+     */
+    default void setAliasingDetector(AliasingDetector detector) {
+        if (detector != null)
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not observe its table");
+    }
+
+    /**
+     * write the state which belongs to the running program: the history registers and the SC register.
+     * it is the first part of the snapshot, the tables are not written.
+     *
+     * @param out receives the history of the predictor
+     * @throws UnsupportedOperationException if the predictor does not save its state
+     */
+    default void saveContext(SnapshotOutput out) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not save its context");
+    }
+
+    /**
+     * read the state which is written by {@link #saveContext}, the tables are not changed
+     *
+     * @param in holds the history of a predictor with the same configuration
+     * @throws UnsupportedOperationException if the predictor does not save its state
+     */
+    default void restoreContext(SnapshotInput in) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not save its context");
+    }
 }
@@ -0,0 +1,180 @@
+package hardwar.branch.prediction.shared;
+
+/*
+ * our mutable packed bit vector model
+ * read below assumptions about pre-defined MutableBitVector
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the bit order is as same as BitVector and Bit arrays, get(0) is the most significant bit.
+ *
+ * 2) the length of the vector is fixed at construction, all the operations keep the length.
+ *
+ * 3) up to 64 bits no array is allocated, longer vectors use the words array.
+ * ------------------------------------------------------
+ */
+
+import java.util.Arrays;
+
+public final class MutableBitVector {
+    private final int length;
+    private final long[] words; // null if length <= 64
+    private long word; // the least significant 64 bits if length <= 64
+
+    /**
+     * Creates a zero filled vector
+     *
+     * @param length number of bits
+     */
+    public MutableBitVector(int length) {
+        if (length < 0) throw new IllegalArgumentException("vector length can not be negative");
+        this.length = length;
+        this.words = length > BitVector.WORD_SIZE ? new long[BitVector.wordCount(length)] : null;
+    }
+
+    /**
+     * @return number of bits in the vector
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @param index the index of the bit, 0 is the most significant bit
+     * @return the bit at the given index
+     */
+    public Bit get(int index) {
+        checkIndex(index);
+        int position = length - 1 - index;
+        if (words == null) return Bit.of(((word >>> position) & 1L) == 1L);
+        return Bit.of(((words[position >>> 6] >>> (position & 63)) & 1L) == 1L);
+    }
+
+    /**
+     * @param index the index of the bit, 0 is the most significant bit
+     * @param bit   the new value of the bit
+     */
+    public void set(int index, Bit bit) {
+        checkIndex(index);
+        int position = length - 1 - index;
+        if (words == null) {
+            if (bit == Bit.ONE) word |= 1L << position;
+            else word &= ~(1L << position);
+        } else {
+            if (bit == Bit.ONE) BitVector.setBit(words, position);
+            else BitVector.clearBit(words, position);
+        }
+    }
+
+    /**
+     * Inserts a new bit at the beginning of the vector and shifts all existing bits to the right.
+     * The last bit is dropped.
+     *
+     * @param bit the new most significant bit
+     */
+    public void insert(boolean bit) {
+        if (length == 0) return;
+        if (words == null) {
+            word = (word >>> 1) | (bit ? 1L << (length - 1) : 0L);
+        } else {
+            BitVector.shiftRightOne(words);
+            if (bit) BitVector.setBit(words, length - 1);
+        }
+    }
+
+    /**
+     * Loads the least significant `length` bits of the value, the higher words are cleared.
+     *
+     * @param value the new value of the vector
+     */
+    public void load(long value) {
+        if (words == null) {
+            word = value & BitVector.mask(length);
+        } else {
+            Arrays.fill(words, 0L);
+            words[0] = value;
+        }
+    }
+
+    /**
+     * Loads the first `length` bits of the array. The first element of the array is the most significant bit.
+     *
+     * @param bits the bits to be loaded
+     */
+    public void load(Bit[] bits) {
+        if (words == null) {
+            long value = 0;
+            for (int i = 0; i < length; i++)
+                value = (value << 1) | (bits[i] == Bit.ONE ? 1 : 0);
+            word = value;
+        } else {
+            Arrays.fill(words, 0L);
+            for (int i = 0; i < length; i++) {
+                if (bits[i] == Bit.ONE) BitVector.setBit(words, length - 1 - i);
+            }
+        }
+    }
+
+    /**
+     * @param bits the vector to be loaded, must have the same length
+     */
+    public void load(BitVector bits) {
+        if (bits.length() != length)
+            throw new IllegalArgumentException("vector length is not as same as " + length);
+        if (words == null) {
+            word = bits.toLong();
+        } else {
+            for (int i = 0; i < length; i++) {
+                if (bits.get(i) == Bit.ONE) BitVector.setBit(words, length - 1 - i);
+                else BitVector.clearBit(words, length - 1 - i);
+            }
+        }
+    }
+
+    /**
+     * @return the least significant 64 bits of the vector as a number
+     */
+    public long toLong() {
+        return words == null ? word : words[0];
+    }
+
+    /**
+     * @return a new Bit array with the same bits as the vector
+     */
+    public Bit[] toBits() {
+        Bit[] bits = new Bit[length];
+        for (int i = 0; i < length; i++) {
+            bits[i] = get(i);
+        }
+        return bits;
+    }
+
+    /**
+     * @return an immutable copy of the vector
+     */
+    public BitVector toBitVector() {
+        if (words == null) return BitVector.of(word, length);
+        return BitVector.fromWords(length, words.clone());
+    }
+
+    /**
+     * set all the bits to zero
+     */
+    public void clear() {
+        word = 0L;
+        if (words != null) Arrays.fill(words, 0L);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("bit index " + index + " is out of vector bounds");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(get(i));
+        }
+        return sb.toString();
+    }
+}
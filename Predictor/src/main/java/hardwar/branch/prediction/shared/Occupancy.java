@@ -0,0 +1,23 @@
+package hardwar.branch.prediction.shared;
+
+public interface Occupancy {
+    /**
+     * computed when it is called, it can take a pass over a large table
+     *
+     * @return number of entries which are associated with a value
+     */
+    long getOccupancy();
+
+    /**
+     * @return number of entries which can be associated at the same time
+     */
+    long getCapacity();
+
+    /**
+     * an entry which is associated again after a clear or an eviction is counted again. the count is a part of
+     * the snapshot of the model, so a restored model continues with the count of the saved one.
+     *
+     * @return number of entry associations since the model is created
+     */
+    long getAllocations();
+}
@@ -0,0 +1,80 @@
+package hardwar.branch.prediction.shared;
+
+/**
+ * The state of one in-flight prediction: where the counter was read from and its value at predict time.
+ * A predictor fills the handle in predict and consumes it in update, so several branches can be predicted
+ * before the first one is updated. A handle can be reused once its update is done.
+ */
+public final class PredictionHandle {
+    private long instructionAddress;
+    private long index;
+    private long selector;
+    private int counter;
+    private boolean predictedTaken;
+    private long checkpoint;
+
+    /**
+     * fill the handle, it is called by the predictors
+     *
+     * @param instructionAddress the branch instruction address
+     * @param index              the table entry which the counter is read from
+     * @param selector           the history register which is used, zero for a global history
+     * @param counter            the counter value at predict time
+     * @param predictedTaken     the predicted result of branch
+     * @return the predicted result of branch
+     */
+    public boolean load(long instructionAddress, long index, long selector, int counter, boolean predictedTaken) {
+        this.instructionAddress = instructionAddress;
+        this.index = index;
+        this.selector = selector;
+        this.counter = counter;
+        this.predictedTaken = predictedTaken;
+        return predictedTaken;
+    }
+
+    public long getInstructionAddress() {
+        return instructionAddress;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public long getSelector() {
+        return selector;
+    }
+
+    public int getCounter() {
+        return counter;
+    }
+
+    public boolean isPredictedTaken() {
+        return predictedTaken;
+    }
+
+    /**
+     * @return the sequence number of the history checkpoint of a speculative prediction
+     */
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @param checkpoint the sequence number of the history checkpoint, it is set by speculative predictors
+     */
+    public void setCheckpoint(long checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    public String toString() {
+        return "PredictionHandle{" +
+                "instructionAddress=" + instructionAddress +
+                ", index=" + index +
+                ", selector=" + selector +
+                ", counter=" + counter +
+                ", predictedTaken=" + predictedTaken +
+                ", checkpoint=" + checkpoint +
+                '}';
+    }
+}
@@ -0,0 +1,213 @@
+package hardwar.branch.prediction.shared;
+
+/*
+ * metrics of a predictor
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the counters are LongAdders, so they can be read from another thread (e.g. a JMX client) while the
+ * predictor is running and the predictor thread does not wait for the reader.
+ *
+ * 2) the simulate loops add the counters once per chunk, the other functions add them once per call.
+ * a read-modify-write of the table is counted as one read and one write. a speculative prediction is counted
+ * when it is resolved, so the predictions which are squashed and predicted again are counted once.
+ *
+ * 3) the occupancy of the table and the history register bank is read from the devices when it is asked,
+ * the predictor does not count it.
+ *
+ * 4) the aliasing counters are the counters of the aliasing detector of the predictor, they are zero if the
+ * predictor has no detector.
+ * -------------------------------------------------------
+ */
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class PredictorMetrics implements PredictorMetricsMBean {
+    public static final String DOMAIN = "hardwar.branch.prediction";
+
+    private final LongAdder predictions = new LongAdder();
+    private final LongAdder mispredictions = new LongAdder();
+    private final LongAdder tableReads = new LongAdder();
+    private final LongAdder tableWrites = new LongAdder();
+    private final Occupancy table;
+    private final Occupancy history; // the per address or per set register bank, null for a global history
+    private volatile AliasingDetector aliasing; // the detector of the table, null if the aliasing is not detected
+
+    /**
+     * @param table   the prediction table of the predictor
+     * @param history the history register bank of the predictor, null if the predictor has one history register
+     */
+    public PredictorMetrics(Occupancy table, Occupancy history) {
+        this.table = table;
+        this.history = history;
+    }
+
+    /**
+     * a prediction which reads the table, it is resolved by recordUpdate
+     */
+    public void recordPrediction() {
+        predictions.increment();
+        tableReads.increment();
+    }
+
+    /**
+     * an update which writes the table
+     *
+     * @param mispredicted true if the prediction of the branch was not its actual result
+     */
+    public void recordUpdate(boolean mispredicted) {
+        tableWrites.increment();
+        if (mispredicted) mispredictions.increment();
+    }
+
+    /**
+     * a prediction and its update
+     *
+     * @param mispredicted true if the prediction of the branch was not its actual result
+     */
+    public void record(boolean mispredicted) {
+        recordPrediction();
+        recordUpdate(mispredicted);
+    }
+
+    /**
+     * a chunk of predictions and their updates
+     *
+     * @param branches       number of branches in the chunk
+     * @param mispredictions number of mispredicted branches in the chunk
+     */
+    public void record(int branches, int mispredictions) {
+        predictions.add(branches);
+        tableReads.add(branches);
+        tableWrites.add(branches);
+        this.mispredictions.add(mispredictions);
+    }
+
+    @Override
+    public long getPredictions() {
+        return predictions.sum();
+    }
+
+    @Override
+    public long getMispredictions() {
+        return mispredictions.sum();
+    }
+
+    /**
+     * @return the fraction of correct predictions, zero before the first prediction
+     */
+    @Override
+    public double getAccuracy() {
+        long n = predictions.sum();
+        return n == 0 ? 0 : 1 - (double) mispredictions.sum() / n;
+    }
+
+    @Override
+    public long getTableReads() {
+        return tableReads.sum();
+    }
+
+    @Override
+    public long getTableWrites() {
+        return tableWrites.sum();
+    }
+
+    @Override
+    public long getTableAllocations() {
+        return table.getAllocations();
+    }
+
+    @Override
+    public long getTableOccupancy() {
+        return table.getOccupancy();
+    }
+
+    @Override
+    public long getTableCapacity() {
+        return table.getCapacity();
+    }
+
+    /**
+     * @return number of initialized history registers, zero for a global history
+     */
+    @Override
+    public long getHistoryOccupancy() {
+        return history == null ? 0 : history.getOccupancy();
+    }
+
+    /**
+     * @return number of history registers, zero for a global history
+     */
+    @Override
+    public long getHistoryCapacity() {
+        return history == null ? 0 : history.getCapacity();
+    }
+
+    /**
+     * @param aliasing the aliasing detector of the table, null if the aliasing is not detected
+     */
+    public void setAliasingDetector(AliasingDetector aliasing) {
+        this.aliasing = aliasing;
+    }
+
+    @Override
+    public long getAliasedAccesses() {
+        AliasingDetector detector = aliasing;
+        return detector == null ? 0 : detector.getAliasedAccesses();
+    }
+
+    @Override
+    public long getConstructiveAliasing() {
+        AliasingDetector detector = aliasing;
+        return detector == null ? 0 : detector.getConstructive();
+    }
+
+    @Override
+    public long getDestructiveAliasing() {
+        AliasingDetector detector = aliasing;
+        return detector == null ? 0 : detector.getDestructive();
+    }
+
+    /**
+     * reset the counters, the devices are not changed
+     */
+    @Override
+    public void reset() {
+        predictions.reset();
+        mispredictions.reset();
+        tableReads.reset();
+        tableWrites.reset();
+    }
+
+    /**
+     * publish the metrics on the platform MBean server
+     *
+     * @param name the name of the predictor
+     * @return the object name of the metrics, DOMAIN:type=Predictor,name=name
+     * @throws IllegalArgumentException if the name is already registered
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Predictor,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("can not register the metrics of " + name, e);
+        }
+    }
+
+    /**
+     * remove the metrics from the platform MBean server
+     *
+     * @param objectName the object name which is returned by register
+     */
+    public static void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("can not unregister " + objectName, e);
+        }
+    }
+}
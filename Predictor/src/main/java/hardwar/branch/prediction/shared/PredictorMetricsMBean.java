@@ -0,0 +1,34 @@
+package hardwar.branch.prediction.shared;
+
+/**
+ * the JMX view of {@link PredictorMetrics}
+ */
+public interface PredictorMetricsMBean {
+    long getPredictions();
+
+    long getMispredictions();
+
+    double getAccuracy();
+
+    long getTableReads();
+
+    long getTableWrites();
+
+    long getTableAllocations();
+
+    long getTableOccupancy();
+
+    long getTableCapacity();
+
+    long getHistoryOccupancy();
+
+    long getHistoryCapacity();
+
+    long getAliasedAccesses();
+
+    long getConstructiveAliasing();
+
+    long getDestructiveAliasing();
+
+    void reset();
+}
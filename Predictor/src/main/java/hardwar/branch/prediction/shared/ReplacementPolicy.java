@@ -0,0 +1,7 @@
+package hardwar.branch.prediction.shared;
+
+public enum ReplacementPolicy {
+    LRU, // evict the least recently used way of the set
+    PSEUDO_LRU, // evict the way which the tree of the set points to
+    RANDOM // evict a random way of the set
+}
@@ -0,0 +1,134 @@
+package hardwar.branch.prediction.shared;
+
+/*
+binary snapshot reader, the counterpart of SnapshotOutput
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public final class SnapshotInput implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * @param channel the channel which holds the snapshot, it is closed by close
+     */
+    public SnapshotInput(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return;
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) throw new EOFException("snapshot is truncated");
+        }
+        buffer.flip();
+    }
+
+    public int readInt() throws IOException {
+        ensure(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        ensure(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    public boolean readBoolean() throws IOException {
+        ensure(1);
+        return buffer.get() != 0;
+    }
+
+    /**
+     * @param values receives values.length longs
+     */
+    public void readLongs(long[] values) throws IOException {
+        for (int offset = 0; offset < values.length; ) {
+            ensure(Long.BYTES);
+            int length = Math.min(buffer.remaining() / Long.BYTES, values.length - offset);
+            buffer.asLongBuffer().get(values, offset, length);
+            buffer.position(buffer.position() + length * Long.BYTES);
+            offset += length;
+        }
+    }
+
+    /**
+     * @param bytes receives bytes.length bytes
+     */
+    public void readBytes(byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length; ) {
+            ensure(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.get(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * fills the remaining bytes of the buffer, the position of the buffer is not changed
+     *
+     * @param data receives data.remaining() bytes
+     */
+    public void readBuffer(ByteBuffer data) throws IOException {
+        ByteBuffer bytes = data.duplicate();
+        int buffered = Math.min(buffer.remaining(), bytes.remaining());
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(slice.position() + buffered);
+        bytes.put(slice);
+        buffer.position(buffer.position() + buffered);
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes) < 0) throw new EOFException("snapshot is truncated");
+        }
+    }
+
+    public String readString() throws IOException {
+        int length = readInt();
+        if (length < 0) throw new IOException("snapshot has a broken string");
+        byte[] bytes = new byte[length];
+        readBytes(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param length number of bits
+     * @return the bits which are packed by SnapshotOutput.writeBits
+     */
+    public Bit[] readBits(int length) throws IOException {
+        Bit[] bits = new Bit[length];
+        long word = 0;
+        for (int i = 0; i < length; i++) {
+            if ((i & 63) == 0) word = readLong();
+            bits[i] = Bit.of(((word >>> i) & 1L) != 0);
+        }
+        return bits;
+    }
+
+    /**
+     * reads a configuration value of the snapshot
+     *
+     * @param expected the value of the model which restores the snapshot
+     * @param name     name of the value
+     * @throws IOException if the snapshot has another value
+     */
+    public void expect(long expected, String name) throws IOException {
+        long value = readLong();
+        if (value != expected)
+            throw new IOException("snapshot " + name + " is " + value + ", expected " + expected);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,126 @@
+package hardwar.branch.prediction.shared;
+
+/*
+binary snapshot writer
+
+the values are buffered and written to the channel in little endian order. bit arrays are packed in longs,
+the first bit of the array is the least significant bit of the first long.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public final class SnapshotOutput implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * @param channel the channel which receives the snapshot, it is closed by close
+     */
+    public SnapshotOutput(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    public void writeInt(int value) throws IOException {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        ensure(1);
+        buffer.put((byte) (value ? 1 : 0));
+    }
+
+    /**
+     * @param values the longs, the length is not written
+     */
+    public void writeLongs(long[] values) throws IOException {
+        for (int offset = 0; offset < values.length; ) {
+            ensure(Long.BYTES);
+            int length = Math.min(buffer.remaining() / Long.BYTES, values.length - offset);
+            buffer.asLongBuffer().put(values, offset, length);
+            buffer.position(buffer.position() + length * Long.BYTES);
+            offset += length;
+        }
+    }
+
+    /**
+     * @param bytes the bytes, the length is not written
+     */
+    public void writeBytes(byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length; ) {
+            ensure(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * writes the remaining bytes of the buffer without copying them into the snapshot buffer, the position of
+     * the buffer is not changed
+     *
+     * @param data the bytes, the length is not written
+     */
+    public void writeBuffer(ByteBuffer data) throws IOException {
+        flush();
+        ByteBuffer bytes = data.duplicate();
+        while (bytes.hasRemaining()) channel.write(bytes);
+    }
+
+    /**
+     * @param value the string, written as its UTF-8 length and bytes
+     */
+    public void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    /**
+     * @param bits the bits packed in longs, the length is not written
+     */
+    public void writeBits(Bit[] bits) throws IOException {
+        long word = 0;
+        for (int i = 0; i < bits.length; i++) {
+            if (bits[i] == Bit.ONE) word |= 1L << i;
+            if ((i & 63) == 63 || i == bits.length - 1) {
+                writeLong(word);
+                word = 0;
+            }
+        }
+    }
+
+    /**
+     * writes the buffered values to the channel
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
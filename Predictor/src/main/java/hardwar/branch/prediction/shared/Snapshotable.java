@@ -0,0 +1,22 @@
+package hardwar.branch.prediction.shared;
+
+import java.io.IOException;
+
+public interface Snapshotable {
+    /**
+     * writes the state of the model in binary form. the configuration is not a part of the state, the snapshot
+     * can be restored in another model with the same configuration.
+     *
+     * @param out the snapshot output
+     * @throws IOException if the snapshot can not be written
+     */
+    void snapshot(SnapshotOutput out) throws IOException;
+
+    /**
+     * replaces the state of the model with the snapshot
+     *
+     * @param in the snapshot input
+     * @throws IOException if the snapshot is truncated or it is taken from a model with another configuration
+     */
+    void restore(SnapshotInput in) throws IOException;
+}
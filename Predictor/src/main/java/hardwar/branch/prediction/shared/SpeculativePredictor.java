@@ -0,0 +1,33 @@
+package hardwar.branch.prediction.shared;
+
+/**
+ * A predictor which can shift its predictions into the history before the branches are resolved, as the
+ * front-end of a deep pipeline does.
+ */
+public interface SpeculativePredictor extends BranchPredictor {
+    /**
+     * Predict the branch and shift the predicted result into the history immediately. The prediction is counted
+     * in the metrics when it is resolved, a prediction which is squashed before is not counted.
+     *
+     * @param instructionAddress the branch instruction address as a number, the first address bit is the MSB
+     * @param handle             receives the state of the prediction and its history checkpoint
+     * @return true if the branch is predicted as taken
+     */
+    boolean predictSpeculative(long instructionAddress, PredictionHandle handle);
+
+    /**
+     * Resolve the oldest in-flight speculative prediction: the prediction is counted, the counter is trained
+     * and, if the branch was mispredicted, the history is repaired and every younger in-flight prediction is
+     * squashed.
+     *
+     * @param handle the handle which is filled by {@link #predictSpeculative}
+     * @param taken  the actual result of branch
+     * @return true if the branch was mispredicted, the younger branches must be predicted again
+     */
+    boolean resolve(PredictionHandle handle, boolean taken);
+
+    /**
+     * @return number of speculative predictions which are not resolved yet
+     */
+    int inFlight();
+}
@@ -2,6 +2,8 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Monitorable;
+import hardwar.branch.prediction.shared.Occupancy;
+import hardwar.branch.prediction.shared.Snapshotable;
 
 /*
 simple Cache interface
@@ -9,7 +11,7 @@ simple Cache interface
 read the functions documentation if anything is unclear
 
  */
-public interface Cache<K, V> extends Monitorable {
+public interface Cache<K, V> extends Monitorable, Snapshotable, Occupancy {
     /**
      * @param key think of key as address
      * @return the value which is saved in that address or block
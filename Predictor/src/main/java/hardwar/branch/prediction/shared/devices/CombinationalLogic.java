@@ -2,6 +2,7 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
 import hardwar.branch.prediction.shared.CountMode;
 import hardwar.branch.prediction.shared.HashMode;
 
@@ -13,11 +14,47 @@ public final class CombinationalLogic {
     }
 
     public static Bit[] count(Bit[] input, boolean up, CountMode mode) {
+        if (input.length < Integer.SIZE) {
+            return BitVector.of(count(Bit.toNumber(input), input.length, up, mode), input.length).toBits();
+        }
         if (mode == CountMode.SATURATING) {
             return saturateCount(input, up);
         } else throw new UnsupportedOperationException();
     }
 
+    /**
+     * Packed version of the counter, the counter value is updated on the vector number without
+     * converting it to a bit array.
+     *
+     * @param input the comb logic input
+     * @param up    the counter direction
+     * @param mode  the counter mode
+     * @return the counted value with the same length as input
+     */
+    public static BitVector count(BitVector input, boolean up, CountMode mode) {
+        int len = input.length();
+        if (len >= Integer.SIZE) {
+            if (mode != CountMode.SATURATING) throw new UnsupportedOperationException();
+            return BitVector.of(saturateCount(input.toBits(), up));
+        }
+        return BitVector.of(count(input.toInt(), len, up, mode), len);
+    }
+
+    /**
+     * Counter on the counter value, the counter is not converted to bits. The counters up to
+     * CounterEngine.MAX_WIDTH bits are counted with one table lookup.
+     *
+     * @param value the counter value
+     * @param width number of counter bits, less than 32
+     * @param up    the counter direction
+     * @param mode  the counter mode
+     * @return the counted value
+     */
+    public static int count(int value, int width, boolean up, CountMode mode) {
+        if (width <= CounterEngine.MAX_WIDTH) return CounterEngine.next(value, width, up, mode);
+        return CounterEngine.compute(value, width, up, mode);
+    }
+
 
     /**
      * Increments or decrements the saturating counter based on the value of the input bit.
@@ -73,17 +110,69 @@ public final class CombinationalLogic {
 
     /**
      * @param input        the hash function
-     * @param outBitNumber number of output bits
+     * @param outBitNumber number of output bits, zero gives an empty hash
      * @param mode         hash mode
      * @return hashed value of input based on the specified mode
+     * @throws IllegalArgumentException if the number of output bits is negative
      */
     public static Bit[] hash(Bit[] input, int outBitNumber, HashMode mode) {
+        if (outBitNumber < 0) throw new IllegalArgumentException("number of hash bits can not be negative");
         if (mode == HashMode.XOR) {
             return hash(input, outBitNumber);
+        } else if (mode == HashMode.SIMPLE_CUT) {
+            return cut(input, outBitNumber);
         } else throw new UnsupportedOperationException();
 
     }
 
+    /**
+     * Packed version of the hash. The input is folded in K bit chunks, starting from the most significant bit,
+     * so the result is as same as the bit array hash.
+     *
+     * @param input        the hash function input
+     * @param outBitNumber number of output bits
+     * @param mode         hash mode
+     * @return hashed value of input based on the specified mode
+     */
+    public static BitVector hash(BitVector input, int outBitNumber, HashMode mode) {
+        if (input.length() > Long.SIZE || outBitNumber >= Long.SIZE) {
+            return BitVector.of(hash(input.toBits(), outBitNumber, mode));
+        }
+        return BitVector.of(hash(input.toLong(), input.length(), outBitNumber, mode), outBitNumber);
+    }
+
+    /**
+     * Hash on the input value, the result is as same as the bit array hash of the width bits. XOR folds the input
+     * in K bit chunks starting from the most significant bit, SIMPLE_CUT keeps the first K bits.
+     * <p>
+     * The input is a number: an address with more than width bits is cut to its last width bits before the hash,
+     * and a shorter address is filled with zeros before its first bit.
+     *
+     * @param input        the hash function input, the bits above width are ignored
+     * @param width        number of input bits, at most 64
+     * @param outBitNumber number of output bits, less than 64, zero gives a zero hash
+     * @param mode         hash mode
+     * @return hashed value of input based on the specified mode
+     * @throws IllegalArgumentException if the number of output bits is negative
+     */
+    public static long hash(long input, int width, int outBitNumber, HashMode mode) {
+        if (outBitNumber < 0) throw new IllegalArgumentException("number of hash bits can not be negative");
+        if (outBitNumber == 0 || width == 0) return 0;
+        if (mode == HashMode.SIMPLE_CUT) return cut(input, width, outBitNumber);
+        if (mode != HashMode.XOR) throw new UnsupportedOperationException();
+
+        // fold the K bit chunks from the last bit with a fixed number of shifts: each step halves the chunks
+        long folded = input & (-1L >>> (Long.SIZE - width));
+        for (int shift = outBitNumber * Integer.highestOneBit((width - 1) / outBitNumber | 1);
+             shift >= outBitNumber; shift >>>= 1) {
+            folded ^= folded >>> shift;
+        }
+        long mask = (1L << outBitNumber) - 1;
+        folded &= mask;
+        // the chunks start from the first bit, so the folded value is rotated by the bits of the partial chunk
+        int pad = (outBitNumber - width % outBitNumber) % outBitNumber;
+        return ((folded << pad) | (folded >>> (outBitNumber - pad))) & mask;
+    }
 
     /**
      * hash N bits to a K bit value
@@ -93,6 +182,7 @@ public final class CombinationalLogic {
      */
     private static Bit[] hash(Bit[] bits, int outBitNumber) {
         Bit[] hash = new Bit[outBitNumber];
+        if (outBitNumber == 0) return hash;
 
         // XOR the first M bits of the PC to produce the hash
         for (int i = 0; i < bits.length; i++) {
@@ -107,4 +197,31 @@ public final class CombinationalLogic {
         }
         return hash;
     }
+
+    /**
+     * the first K bits of the input, a shorter input is filled with zeros after its last bit
+     *
+     * @param input        the input value, the bits above width are ignored
+     * @param width        number of input bits, at most 64
+     * @param outBitNumber number of output bits, less than 64
+     * @return the first outBitNumber bits of input
+     */
+    private static long cut(long input, int width, int outBitNumber) {
+        long value = width >= Long.SIZE ? input : input & ((1L << width) - 1);
+        if (outBitNumber >= width) return value << (outBitNumber - width);
+        return value >>> (width - outBitNumber);
+    }
+
+    /**
+     * @param bits         the input bits
+     * @param outBitNumber number of output bits
+     * @return the first outBitNumber bits, filled with zeros if the input is shorter
+     */
+    private static Bit[] cut(Bit[] bits, int outBitNumber) {
+        Bit[] cut = new Bit[outBitNumber];
+        for (int i = 0; i < outBitNumber; i++) {
+            cut[i] = i < bits.length ? bits[i] : Bit.ZERO;
+        }
+        return cut;
+    }
 }
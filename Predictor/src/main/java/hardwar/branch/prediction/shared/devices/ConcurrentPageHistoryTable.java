@@ -0,0 +1,308 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our concurrent Page History Table model
+ * read below assumptions about pre-defined concurrent PHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the PHT has exactly nRows blocks and the entry is the row index, as same as the flat PHT. several predictors
+ * (hardware threads) with their own history registers can share one PHT from several java threads.
+ *
+ * 2) each row is an int of an atomic array: the block in the low byte and the generation which wrote the row
+ * above it. a row of an older generation is not associated, so clear only moves to the next generation.
+ *
+ * 3) getAndCount is a compare and set loop, so the counter steps of the threads are never lost. in the racy mode
+ * the counted block of an associated row is written without the compare, as in a hardware PHT where one of two
+ * updates of the same counter in the same cycle is lost. the racy mode does not retry when the threads hit the
+ * same associated rows, but the write which associates a row is always a compare and set, so the allocations
+ * are counted exactly in both modes.
+ *
+ * 4) clear and restore are not atomic with the other functions, call them while no other thread uses the PHT.
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConcurrentPageHistoryTable implements FlatCache {
+    private static final int BLOCK_MASK = 0xFF;
+    private static final int LAST_GENERATION = (1 << (Integer.SIZE - Byte.SIZE)) - 1;
+
+    private final int nRows; // number of PHT entries
+    private final int nColumns; // number of bits in a block
+    private final int blockMask; // the nColumns bits of a block
+    private final int addressWidth; // number of bits needed for printing an entry
+    private final boolean racy; // if true the counted blocks are written without compare and set
+    private final AtomicIntegerArray rows; // the generation and the block of each row
+    private volatile int generation = 1;
+    private final LongAdder allocations = new LongAdder(); // rows which are associated with a block
+
+    public ConcurrentPageHistoryTable(int nRows, int nColumns) {
+        this(nRows, nColumns, false);
+    }
+
+    /**
+     * @param nRows    number of rows
+     * @param nColumns number of bits in a block, at most 8
+     * @param racy     if true getAndCount writes the counted block without compare and set, so a step of a
+     *                 concurrent thread can be lost
+     */
+    public ConcurrentPageHistoryTable(int nRows, int nColumns, boolean racy) {
+        if (nRows <= 0) throw new IllegalArgumentException("number of rows must be positive");
+        if (nColumns <= 0 || nColumns > FlatPageHistoryTable.MAX_COLUMNS)
+            throw new IllegalArgumentException("block size must be between 1 and " + FlatPageHistoryTable.MAX_COLUMNS
+                    + " bits");
+        this.nRows = nRows;
+        this.nColumns = nColumns;
+        this.blockMask = (1 << nColumns) - 1;
+        this.addressWidth = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(nRows - 1));
+        this.racy = racy;
+        this.rows = new AtomicIntegerArray(nRows);
+    }
+
+    /**
+     * @return number of rows of the table
+     */
+    public int getRows() {
+        return nRows;
+    }
+
+    /**
+     * @return true if the counted blocks are written without compare and set
+     */
+    public boolean isRacy() {
+        return racy;
+    }
+
+    @Override
+    public int getColumns() {
+        return nColumns;
+    }
+
+    @Override
+    public boolean contains(long entry) {
+        return rows.get((int) entry) >>> Byte.SIZE == generation;
+    }
+
+    @Override
+    public int get(long entry) {
+        int value = rows.get((int) entry);
+        return value >>> Byte.SIZE == generation ? value & BLOCK_MASK : 0;
+    }
+
+    @Override
+    public void put(long entry, int block) {
+        int tag = generation << Byte.SIZE;
+        int value = rows.getAndSet((int) entry, tag | (block & blockMask));
+        if ((value & ~BLOCK_MASK) != tag) allocations.increment();
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultBlock) {
+        int row = (int) entry;
+        int tag = generation << Byte.SIZE;
+        while (true) {
+            int value = rows.get(row);
+            if ((value & ~BLOCK_MASK) == tag) return value & BLOCK_MASK;
+            if (rows.compareAndSet(row, value, tag | (defaultBlock & blockMask))) {
+                allocations.increment();
+                return defaultBlock & blockMask;
+            }
+        }
+    }
+
+    @Override
+    public int getAndCount(long entry, int defaultBlock, boolean up, CountMode mode) {
+        int row = (int) entry;
+        int tag = generation << Byte.SIZE;
+        while (true) {
+            int value = rows.get(row);
+            boolean present = (value & ~BLOCK_MASK) == tag;
+            int block = present ? value & BLOCK_MASK : defaultBlock & blockMask;
+            int counted = tag | CounterEngine.next(block, nColumns, up, mode);
+            if (racy && present) {
+                rows.lazySet(row, counted);
+            } else if (counted != value && !rows.compareAndSet(row, value, counted)) {
+                // another thread wrote the row, an allocation is counted only by the thread which wins it
+                continue;
+            }
+            if (!present) allocations.increment();
+            return block;
+        }
+    }
+
+    /**
+     * Get the value associated with the given key from the cache.
+     *
+     * @param entry the key to look up in the cache
+     * @return a copy of the value associated with the key, or null if the key is not found
+     */
+    @Override
+    public Bit[] get(Bit[] entry) {
+        long row = BitVector.toLong(entry);
+        return contains(row) ? BitVector.of(get(row), nColumns).toBits() : null;
+    }
+
+    /**
+     * Insert a new key-value pair into the cache.
+     *
+     * @param entry the key to insert into the cache
+     * @param value the value to associate with the key
+     * @throws RuntimeException if the length of the block is not equal to nColumns
+     */
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        put(BitVector.toLong(entry), (int) BitVector.toLong(value));
+    }
+
+    /**
+     * put the value in the entry if the entry is not associated to any block.
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key) if the key is not mapped to any not-null data
+     */
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        setDefault(BitVector.toLong(entry), (int) BitVector.toLong(value));
+    }
+
+    /**
+     * Returns the value associated with the given key, or a default value if the key is not found in the cache.
+     * If the key is not found in the cache, the default value is inserted into the cache.
+     *
+     * @param entry        the address to look up in the cache
+     * @param defaultValue the default value to insert into the cache if the key is not found
+     * @return a copy of the value associated with the key
+     */
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        int block = setDefault(BitVector.toLong(entry), (int) BitVector.toLong(defaultValue));
+        return BitVector.of(block, nColumns).toBits();
+    }
+
+    /**
+     * Clear all entries from the cache in constant time, the rows of the older generation are not read anymore.
+     */
+    @Override
+    public void clear() {
+        if (generation == LAST_GENERATION) {
+            // the generation wraps around once in 2^24 clears
+            for (int row = 0; row < nRows; row++) rows.set(row, 0);
+            generation = 0;
+        }
+        generation++;
+    }
+
+    @Override
+    public long getOccupancy() {
+        long occupied = 0;
+        for (int row = 0; row < nRows; row++) {
+            if (contains(row)) occupied++;
+        }
+        return occupied;
+    }
+
+    @Override
+    public long getCapacity() {
+        return nRows;
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    /**
+     * writes the associated rows as a bit set and the blocks as bytes, the generations are not written
+     */
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(nRows);
+        out.writeLong(nColumns);
+        out.writeLong(allocations.sum());
+        long[] present = new long[(nRows + Long.SIZE - 1) / Long.SIZE];
+        byte[] blocks = new byte[nRows];
+        for (int row = 0; row < nRows; row++) {
+            int value = rows.get(row);
+            if (value >>> Byte.SIZE != generation) continue;
+            present[row >>> 6] |= 1L << row;
+            blocks[row] = (byte) value;
+        }
+        out.writeLongs(present);
+        out.writeBytes(blocks);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(nRows, "number of rows");
+        in.expect(nColumns, "block size");
+        long allocated = in.readLong();
+        long[] present = new long[(nRows + Long.SIZE - 1) / Long.SIZE];
+        byte[] blocks = new byte[nRows];
+        in.readLongs(present);
+        in.readBytes(blocks);
+        generation = 1;
+        int tag = generation << Byte.SIZE;
+        for (int row = 0; row < nRows; row++) {
+            boolean associated = (present[row >>> 6] & (1L << row)) != 0;
+            rows.set(row, associated ? tag | (blocks[row] & BLOCK_MASK) : 0);
+        }
+        allocations.reset();
+        allocations.add(allocated);
+    }
+
+    /**
+     * Returns a string representation of the current state of the PHT.
+     *
+     * @return a table with the address and block data for each associated row in the PHT
+     */
+    @Override
+    public String monitor() {
+        return monitor(0, nRows, addressWidth);
+    }
+
+    /**
+     * @param fromRow      the first row of the report
+     * @param rows         number of rows in the report
+     * @param addressWidth number of bits of the printed addresses, relative to the first row
+     * @return a table with the address and block data for each associated row in the range
+     */
+    @Override
+    public String monitor(long fromRow, int rows, int addressWidth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("+----------------------------------+\n");
+        sb.append(String.format("| %-19s | %-10s |\n", "Address", "Block"));
+        sb.append("|---------------------|------------|\n");
+
+        for (int row = (int) fromRow; row < fromRow + rows; row++) {
+            if (!contains(row)) continue;
+            String address = BitVector.of(row - fromRow, addressWidth).toString();
+            String block = BitVector.of(get(row), nColumns).toString();
+            if (address.length() > 16) {
+                String address16 = address.substring(0, 16);
+                sb.append(String.format("| %-16s... | %-10s |\n", address16, block));
+            } else {
+                sb.append(String.format("| %-19s | %-10s |\n", address, block));
+            }
+            sb.append("+----------------------------------+\n");
+        }
+
+        return sb.toString();
+    }
+}
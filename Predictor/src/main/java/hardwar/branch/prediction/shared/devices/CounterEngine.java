@@ -0,0 +1,116 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our table driven counter model
+ * read below assumptions about pre-defined counter engine
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the counter value is read as an unsigned number, the first bit is the MSB.
+ *
+ * 2) SATURATING stops at zero and at the largest value, UP_DOWN wraps around in both directions.
+ *
+ * 3) JOHNSON is a twisted ring counter. counting up shifts the register to the right and inserts the
+ * complement of the last bit as the first bit (as same as SIPORegister insert), counting down is the
+ * reverse shift. a width bit Johnson counter has 2 * width valid states.
+ *
+ * 4) the next states of every mode and every width up to MAX_WIDTH are computed once. a table has
+ * 2 * 2^MAX_WIDTH entries, the up direction is the upper half, so a count is one array read.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.CountMode;
+
+public final class CounterEngine {
+    public static final int MAX_WIDTH = Byte.SIZE;
+
+    private static final int STATES = 1 << MAX_WIDTH;
+    private static final int UP = STATES; // offset of the up direction in a table
+    private static final byte[][] TABLES = new byte[CountMode.values().length * (MAX_WIDTH + 1)][];
+
+    static {
+        for (CountMode mode : CountMode.values()) {
+            for (int width = 1; width <= MAX_WIDTH; width++) {
+                byte[] table = new byte[2 * STATES];
+                for (int value = 0; value < STATES; value++) {
+                    int state = value & ((1 << width) - 1);
+                    table[value] = (byte) compute(state, width, false, mode);
+                    table[UP | value] = (byte) compute(state, width, true, mode);
+                }
+                TABLES[slot(width, mode)] = table;
+            }
+        }
+    }
+
+    private CounterEngine() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * @param value the counter value
+     * @param width number of counter bits, at most MAX_WIDTH
+     * @param up    the counter direction
+     * @param mode  the counter mode
+     * @return the counted value
+     */
+    public static int next(int value, int width, boolean up, CountMode mode) {
+        return table(width, mode)[(up ? UP : 0) | value] & 0xFF;
+    }
+
+    /**
+     * count the counter which is packed in a byte array in place
+     *
+     * @param counters the packed counters
+     * @param index    the index of the counter
+     * @param width    number of counter bits, at most MAX_WIDTH
+     * @param up       the counter direction
+     * @param mode     the counter mode
+     * @return the value of the counter before it is counted
+     */
+    public static int count(byte[] counters, int index, int width, boolean up, CountMode mode) {
+        int value = counters[index] & 0xFF;
+        counters[index] = table(width, mode)[(up ? UP : 0) | value];
+        return value;
+    }
+
+    /**
+     * the next state table of a counter, the callers must not change it
+     *
+     * @param width number of counter bits, at most MAX_WIDTH
+     * @param mode  the counter mode
+     * @return the next state of value is at index value for down and at index 2^MAX_WIDTH + value for up
+     */
+    static byte[] table(int width, CountMode mode) {
+        if (width <= 0 || width > MAX_WIDTH)
+            throw new IllegalArgumentException("counter width must be between 1 and " + MAX_WIDTH);
+        return TABLES[slot(width, mode)];
+    }
+
+    private static int slot(int width, CountMode mode) {
+        return mode.ordinal() * (MAX_WIDTH + 1) + width;
+    }
+
+    /**
+     * the counter logic, it is used to fill the tables and for counters wider than MAX_WIDTH
+     *
+     * @param value the counter value
+     * @param width number of counter bits, less than 32
+     * @param up    the counter direction
+     * @param mode  the counter mode
+     * @return the counted value
+     */
+    static int compute(int value, int width, boolean up, CountMode mode) {
+        int max = (1 << width) - 1;
+        switch (mode) {
+            case SATURATING:
+                if (up) return value < max ? value + 1 : max;
+                return value > 0 ? value - 1 : 0;
+            case UP_DOWN:
+                return (up ? value + 1 : value - 1) & max;
+            case JOHNSON:
+                if (up) return (value >>> 1) | ((~value & 1) << (width - 1));
+                return ((value << 1) & max) | (~value >>> (width - 1) & 1);
+            default:
+                throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+flat cache which saves the block of entry i in row i of one table
+
+the per address PHT saves all of its PHTs in one flat cache, a range of rows is one PHT.
+ */
+interface FlatCache extends IndexedCache {
+    /**
+     * @param fromRow      the first row of the report
+     * @param rows         number of rows in the report
+     * @param addressWidth number of bits of the printed addresses, relative to the first row
+     * @return a table with the address and block data for each associated row in the range
+     */
+    String monitor(long fromRow, int rows, int addressWidth);
+}
@@ -0,0 +1,303 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our dense Page History Table model
+ * read below assumptions about pre-defined flat PHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the PHT has exactly nRows blocks. the entry is read as an unsigned number (first bit is the MSB)
+ * and it is used as the row index of the block.
+ *
+ * 2) each block is a counter of at most 8 bits which is packed in a byte array. a separate generation
+ * tagged bit set remembers which rows are associated, so get returns null for the rows that are not written yet.
+ * clear moves the bit set to the next generation, so it does not depend on the number of rows.
+ *
+ * 3) as same as PHT, the data (bit array) which is saved in the cache is not the data (bit array) that
+ * put or set default is used but a copy of it, and get returns a new bit array.
+ *
+ * 4) there is no checker if the entry is bigger than the last row, the array bounds check is the only guard.
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+
+import java.io.IOException;
+
+public class FlatPageHistoryTable implements FlatCache {
+    static final int MAX_COLUMNS = Byte.SIZE;
+
+    private final int nRows; // number of PHT entries
+    private final int nColumns; // number of bits in a block
+    private final int addressWidth; // number of bits needed for printing an entry
+    private final int blockMask; // the nColumns bits of a block
+    private final byte[] blocks; // packed blocks, indexed by row
+    private final long[] present; // generation bits, one bit per row, set if the row is associated with a block
+    private long epoch = GenerationBits.FIRST_EPOCH; // current generation, in the high half of a word
+    private long allocations; // rows which are associated with a block, it is not reset by clear
+
+    public FlatPageHistoryTable(int nRows, int nColumns) {
+        if (nRows <= 0) throw new IllegalArgumentException("number of rows must be positive");
+        if (nColumns <= 0 || nColumns > MAX_COLUMNS)
+            throw new IllegalArgumentException("block size must be between 1 and " + MAX_COLUMNS + " bits");
+        this.nRows = nRows;
+        this.nColumns = nColumns;
+        this.addressWidth = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(nRows - 1));
+        this.blockMask = (1 << nColumns) - 1;
+        this.blocks = new byte[nRows];
+        this.present = GenerationBits.create(nRows);
+    }
+
+    /**
+     * @return number of rows of the table
+     */
+    public int getRows() {
+        return nRows;
+    }
+
+    @Override
+    public int getColumns() {
+        return nColumns;
+    }
+
+    @Override
+    public boolean contains(long entry) {
+        return GenerationBits.get(present, epoch, (int) entry);
+    }
+
+    @Override
+    public int get(long entry) {
+        int row = (int) entry;
+        // a block of an older generation is still in the array after clear
+        return GenerationBits.get(present, epoch, row) ? blocks[row] & 0xFF : 0;
+    }
+
+    @Override
+    public void put(long entry, int block) {
+        int row = (int) entry;
+        // the bits above the block size are dropped, as same as the bit array of a block
+        blocks[row] = (byte) (block & blockMask);
+        if (!GenerationBits.set(present, epoch, row)) allocations++;
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultBlock) {
+        int row = (int) entry;
+        if (!GenerationBits.get(present, epoch, row)) allocate(row, defaultBlock);
+        return blocks[row] & 0xFF;
+    }
+
+    @Override
+    public int getAndCount(long entry, int defaultBlock, boolean up, CountMode mode) {
+        int row = (int) entry;
+        if (!GenerationBits.get(present, epoch, row)) allocate(row, defaultBlock);
+        return CounterEngine.count(blocks, row, nColumns, up, mode);
+    }
+
+    /**
+     * associates the row with the block, it is kept out of the lookups so they stay small enough to be inlined
+     */
+    private void allocate(int row, int block) {
+        GenerationBits.set(present, epoch, row);
+        blocks[row] = (byte) (block & blockMask);
+        allocations++;
+    }
+
+    /**
+     * Get the value associated with the given key from the cache.
+     *
+     * @param entry the key to look up in the cache
+     * @return a copy of the value associated with the key, or null if the key is not found
+     */
+    @Override
+    public Bit[] get(Bit[] entry) {
+        long row = BitVector.toLong(entry);
+        return contains(row) ? toBlock(get(row)) : null;
+    }
+
+    /**
+     * Insert a new key-value pair into the cache.
+     *
+     * @param entry the key to insert into the cache
+     * @param value the value to associate with the key
+     * @throws RuntimeException if the length of the block is not equal to nColumns
+     */
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        put(BitVector.toLong(entry), (int) BitVector.toLong(value));
+    }
+
+    /**
+     * put the value in the entry if the entry is not associated to any block.
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key) if the key is not mapped to any not-null data
+     */
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        long row = BitVector.toLong(entry);
+        if (!contains(row)) put(entry, value);
+    }
+
+    /**
+     * Returns the value associated with the given key, or a default value if the key is not found in the cache.
+     * If the key is not found in the cache, the default value is inserted into the cache.
+     *
+     * @param entry        the address to look up in the cache
+     * @param defaultValue the default value to insert into the cache if the key is not found
+     * @return a copy of the value associated with the key
+     */
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        putIfAbsent(entry, defaultValue);
+        return get(entry);
+    }
+
+    /**
+     * Packed version of get
+     *
+     * @param entry the key to look up in the cache
+     * @return the value associated with the key, or null if the key is not found
+     */
+    public BitVector get(BitVector entry) {
+        long row = entry.toLong();
+        return contains(row) ? BitVector.of(get(row), nColumns) : null;
+    }
+
+    /**
+     * Packed version of put
+     *
+     * @param entry the key to insert into the cache
+     * @param value the value to associate with the key
+     * @throws RuntimeException if the length of the block is not equal to nColumns
+     */
+    public void put(BitVector entry, BitVector value) {
+        if (value.length() != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        put(entry.toLong(), value.toInt());
+    }
+
+    /**
+     * Packed version of putIfAbsent
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key) if the key is not mapped to any not-null data
+     */
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        if (!contains(entry.toLong())) put(entry, value);
+    }
+
+    /**
+     * Packed version of setDefault
+     *
+     * @param entry        the address to look up in the cache
+     * @param defaultValue the default value to insert into the cache if the key is not found
+     * @return the value associated with the key
+     */
+    public BitVector setDefault(BitVector entry, BitVector defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        putIfAbsent(entry, defaultValue);
+        return get(entry);
+    }
+
+    private Bit[] toBlock(int block) {
+        Bit[] bits = new Bit[nColumns];
+        for (int i = 0; i < nColumns; i++) {
+            bits[i] = Bit.of(((block >>> (nColumns - 1 - i)) & 1) == 1);
+        }
+        return bits;
+    }
+
+    /**
+     * Clear all entries from the cache in constant time, the blocks of the older generation are not read anymore.
+     */
+    @Override
+    public void clear() {
+        epoch = GenerationBits.next(present, epoch);
+    }
+
+    @Override
+    public long getOccupancy() {
+        return GenerationBits.count(present, epoch);
+    }
+
+    @Override
+    public long getCapacity() {
+        return nRows;
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations;
+    }
+
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(nRows);
+        out.writeLong(nColumns);
+        out.writeLong(epoch);
+        out.writeLong(allocations);
+        out.writeLongs(present);
+        out.writeBytes(blocks);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(nRows, "number of rows");
+        in.expect(nColumns, "block size");
+        epoch = in.readLong();
+        allocations = in.readLong();
+        in.readLongs(present);
+        in.readBytes(blocks);
+    }
+
+    /**
+     * Returns a string representation of the current state of the PHT.
+     *
+     * @return a table with the address and block data for each associated row in the PHT
+     */
+    @Override
+    public String monitor() {
+        return monitor(0, nRows, addressWidth);
+    }
+
+    /**
+     * @param fromRow      the first row of the report
+     * @param rows         number of rows in the report
+     * @param addressWidth number of bits of the printed addresses, relative to the first row
+     * @return a table with the address and block data for each associated row in the range
+     */
+    @Override
+    public String monitor(long fromRow, int rows, int addressWidth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("+----------------------------------+\n");
+        sb.append(String.format("| %-19s | %-10s |\n", "Address", "Block"));
+        sb.append("|---------------------|------------|\n");
+
+        for (int row = (int) fromRow; row < fromRow + rows; row++) {
+            if (!contains(row)) continue;
+            String address = BitVector.of(row - fromRow, addressWidth).toString();
+            String block = BitVector.of(get(row), nColumns).toString();
+            if (address.length() > 16) {
+                String address16 = address.substring(0, 16);
+                sb.append(String.format("| %-16s... | %-10s |\n", address16, block));
+            } else {
+                sb.append(String.format("| %-19s | %-10s |\n", address, block));
+            }
+            sb.append("+----------------------------------+\n");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,267 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * a long history register which keeps its xor folded values up to date
+ * read below assumption about the folded history register
+ * ------------------------------------------------------
+ * ASSUMPTIONS
+ * 1) The register is a shift register like SIPORegister, the inserted bit is the
+ * first bit of the register and the last bit is shifted out.
+ *
+ * 2) The history is saved in a ring of longs, so an insert only overwrites the
+ * oldest bit and the register can be hundreds of bits long.
+ *
+ * 3) Each folded value is the history xor folded to a few bits, in chunks starting
+ * from the first bit, as same as the XOR hash of CombinationalLogic. An insert
+ * updates each folded value in O(1): the shifted out bit is removed, the value is
+ * rotated by one bit and the inserted bit is added as its first bit.
+ *
+ * 4) use this model for histories which are longer than the index of the table
+ *
+ * 5) an insert can be undone with the bit which it shifted out, so a speculative
+ * history can be repaired without a copy of the ring.
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class FoldedHistoryRegister implements ShiftRegister {
+    private final long[] ring; // history bits, the oldest bit is at head
+    private final int size;
+    private final int[] foldedSizes;
+    private final int[] outPositions; // the folded bit of the oldest history bit
+    private final long[] folded;
+    private int head;
+    public final String name;
+
+    /**
+     * @param name        the register name
+     * @param size        the number of history bits
+     * @param foldedSizes the number of bits of each folded value, between 1 and 63
+     */
+    public FoldedHistoryRegister(String name, int size, int... foldedSizes) {
+        if (size <= 0) throw new IllegalArgumentException("register size must be positive");
+        if (foldedSizes.length == 0) throw new IllegalArgumentException("at least one folded value is needed");
+        this.name = name;
+        this.size = size;
+        this.ring = new long[(size + Long.SIZE - 1) >>> 6];
+        this.foldedSizes = foldedSizes.clone();
+        this.outPositions = new int[foldedSizes.length];
+        this.folded = new long[foldedSizes.length];
+        for (int i = 0; i < foldedSizes.length; i++) {
+            int width = foldedSizes[i];
+            if (width <= 0 || width >= Long.SIZE)
+                throw new IllegalArgumentException("folded size must be between 1 and 63");
+            // the history is aligned to the first bit of the folded value
+            outPositions[i] = (width - size % width) % width;
+        }
+    }
+
+    /**
+     * @return the first folded value
+     */
+    public long readFolded() {
+        return folded[0];
+    }
+
+    /**
+     * @param fold the index of the folded size given to the constructor
+     * @return the history xor folded to the folded size
+     */
+    public long readFolded(int fold) {
+        return folded[fold];
+    }
+
+    /**
+     * @param fold the index of the folded size given to the constructor
+     * @return the number of bits of the folded value
+     */
+    public int getFoldedLength(int fold) {
+        return foldedSizes[fold];
+    }
+
+    /**
+     * inserts the bit as the first bit of the register, the last bit is shifted out
+     *
+     * @param bit the inserted bit
+     */
+    public void shiftIn(boolean bit) {
+        int word = head >>> 6;
+        long mask = 1L << head;
+        long out = (ring[word] & mask) != 0 ? 1L : 0L;
+        if (bit) ring[word] |= mask;
+        else ring[word] &= ~mask;
+        head = head + 1 == size ? 0 : head + 1;
+
+        long in = bit ? 1L : 0L;
+        for (int i = 0; i < folded.length; i++) {
+            int width = foldedSizes[i];
+            long value = folded[i] ^ (out << outPositions[i]);
+            // rotate one bit to the right, then the inserted bit is the first bit
+            value = (value >>> 1) | ((value & 1L) << (width - 1));
+            folded[i] = value ^ (in << (width - 1));
+        }
+    }
+
+    /**
+     * @return the last bit of the register, it is shifted out by the next insert
+     */
+    public boolean readLast() {
+        return (ring[head >>> 6] & (1L << head)) != 0;
+    }
+
+    /**
+     * undoes the last insert: the first bit is removed and the shifted out bit is the last bit again
+     *
+     * @param shiftedOut the last bit of the register before the undone insert, see {@link #readLast()}
+     */
+    public void unshift(boolean shiftedOut) {
+        head = head == 0 ? size - 1 : head - 1;
+        int word = head >>> 6;
+        long mask = 1L << head;
+        long in = (ring[word] & mask) != 0 ? 1L : 0L;
+        if (shiftedOut) ring[word] |= mask;
+        else ring[word] &= ~mask;
+
+        long out = shiftedOut ? 1L : 0L;
+        for (int i = 0; i < folded.length; i++) {
+            int width = foldedSizes[i];
+            long value = folded[i] ^ (in << (width - 1));
+            // rotate one bit to the left, the inverse of the rotation of shiftIn
+            value = ((value << 1) & ((1L << width) - 1)) | (value >>> (width - 1));
+            folded[i] = value ^ (out << outPositions[i]);
+        }
+    }
+
+    @Override
+    public void insert(Bit bit) {
+        shiftIn(bit == Bit.ONE);
+    }
+
+    /**
+     * @param index the register bit, the first bit is the last inserted bit
+     * @return true if the bit is one
+     */
+    private boolean get(int index) {
+        int position = head - 1 - index;
+        if (position < 0) position += size;
+        return (ring[position >>> 6] & (1L << position)) != 0;
+    }
+
+    @Override
+    public Bit[] read() {
+        Bit[] bits = new Bit[size];
+        for (int i = 0; i < size; i++) {
+            bits[i] = Bit.of(get(i));
+        }
+        return bits;
+    }
+
+    /**
+     * @return the last 64 bits of the register as a number
+     */
+    @Override
+    public long readBits() {
+        long value = 0;
+        for (int p = Math.min(size, Long.SIZE) - 1; p >= 0; p--) {
+            value = (value << 1) | (get(size - 1 - p) ? 1L : 0L);
+        }
+        return value;
+    }
+
+    /**
+     * @param bits the last 64 bits of the register, the other bits are cleared
+     */
+    @Override
+    public void loadBits(long bits) {
+        clear();
+        for (int p = 0; p < Math.min(size, Long.SIZE); p++) {
+            if (((bits >>> p) & 1L) != 0) ring[p >>> 6] |= 1L << p;
+        }
+        refold();
+    }
+
+    @Override
+    public void load(Bit[] bits) {
+        if (bits.length < size) throw new ArrayIndexOutOfBoundsException("not enough bits to load into register");
+        clear();
+        for (int i = 0; i < size; i++) {
+            int position = size - 1 - i;
+            if (bits[i] == Bit.ONE) ring[position >>> 6] |= 1L << position;
+        }
+        refold();
+    }
+
+    /**
+     * computes the folded values from the history bits, the head must be zero
+     */
+    private void refold() {
+        for (int p = 0; p < size; p++) {
+            if ((ring[p >>> 6] & (1L << p)) == 0) continue;
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] ^= 1L << ((p + outPositions[i]) % foldedSizes[i]);
+            }
+        }
+    }
+
+    @Override
+    public int getLength() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(ring, 0L);
+        Arrays.fill(folded, 0L);
+        head = 0;
+    }
+
+    /**
+     * the ring and the folded values are written as they are, so restore does not refold the history
+     */
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(size);
+        out.writeLong(folded.length);
+        for (int width : foldedSizes) out.writeLong(width);
+        out.writeInt(head);
+        out.writeLongs(ring);
+        out.writeLongs(folded);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(size, "register size");
+        in.expect(folded.length, "number of folded values");
+        for (int width : foldedSizes) in.expect(width, "folded size");
+        int position = in.readInt();
+        if (position < 0 || position >= size) throw new IOException("snapshot has a broken register head");
+        in.readLongs(ring);
+        in.readLongs(folded);
+        head = position;
+    }
+
+    @Override
+    public String monitor() {
+        StringBuilder sb = new StringBuilder();
+        int registerWidth = this.size * 4;
+        int labelWidth = name.length();
+        int lastBarIndex = registerWidth + labelWidth;
+        String line = String.join("", Collections.nCopies(lastBarIndex + 2, "-"));
+        sb.append("+").append(line).append("+\n");
+        sb.append("|").append(name).append(" ");
+        for (int i = 0; i < this.size; i++) {
+            sb.append(" | ").append(Bit.of(get(i)));
+        }
+        sb.append(" |\n");
+        sb.append("+").append(line).append("+\n");
+        return sb.toString();
+    }
+}
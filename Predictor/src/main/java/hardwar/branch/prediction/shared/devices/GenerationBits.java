@@ -0,0 +1,94 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * generation tagged bit set
+ * read below assumptions about the generation bits
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) each long word keeps 32 bits of the set in its low half and the generation which wrote the word
+ * in its high half. a word of an older generation is read as an empty word.
+ *
+ * 2) the owner keeps the generation as an epoch, the generation shifted into the high half of a word, so a bit
+ * is checked with one comparison.
+ *
+ * 3) clearing the set is just moving to the next epoch, so it does not depend on the size of the set.
+ * the words are zeroed only when the generation wraps around, once in 2^31 clears.
+ *
+ * 4) the first generation is 1, so a new (zero filled) array is empty.
+ * -------------------------------------------------------
+ */
+
+import java.util.Arrays;
+
+final class GenerationBits {
+    static final long FIRST_EPOCH = 1L << 32;
+    private static final long LAST_EPOCH = (long) Integer.MAX_VALUE << 32;
+    private static final long EPOCH_MASK = 0xFFFFFFFF00000000L;
+    private static final int WORD_SHIFT = 5; // 32 bits of the set in each word
+    private static final int BIT_MASK = (1 << WORD_SHIFT) - 1;
+
+    private GenerationBits() {
+    }
+
+    /**
+     * @param nBits number of bits of the set
+     * @return the words of an empty set
+     */
+    static long[] create(long nBits) {
+        return new long[(int) ((nBits + BIT_MASK) >>> WORD_SHIFT)];
+    }
+
+    /**
+     * @param words the words of the set
+     * @param epoch the current epoch
+     * @param index the bit index
+     * @return true if the bit is set in the current generation
+     */
+    static boolean get(long[] words, long epoch, int index) {
+        long mask = 1L << (index & BIT_MASK);
+        return ((words[index >>> WORD_SHIFT] ^ epoch) & (EPOCH_MASK | mask)) == mask;
+    }
+
+    /**
+     * sets the bit, a word of an older generation is cleared first.
+     *
+     * @param words the words of the set
+     * @param epoch the current epoch
+     * @param index the bit index
+     * @return true if the bit was already set in the current generation
+     */
+    static boolean set(long[] words, long epoch, int index) {
+        int i = index >>> WORD_SHIFT;
+        long word = words[i];
+        long mask = 1L << (index & BIT_MASK);
+        if (((word ^ epoch) & (EPOCH_MASK | mask)) == mask) return true;
+        words[i] = ((word & EPOCH_MASK) == epoch ? word : epoch) | mask;
+        return false;
+    }
+
+    /**
+     * @param words the words of the set
+     * @param epoch the current epoch
+     * @return number of bits which are set in the current generation
+     */
+    static long count(long[] words, long epoch) {
+        long count = 0;
+        for (long word : words) {
+            if ((word & EPOCH_MASK) == epoch) count += Integer.bitCount((int) word);
+        }
+        return count;
+    }
+
+    /**
+     * clears the set in constant time, the words are only zeroed when the generation wraps around.
+     *
+     * @param words the words of the set
+     * @param epoch the current epoch
+     * @return the next epoch
+     */
+    static long next(long[] words, long epoch) {
+        if (epoch != LAST_EPOCH) return epoch + FIRST_EPOCH;
+        Arrays.fill(words, 0L);
+        return FIRST_EPOCH;
+    }
+}
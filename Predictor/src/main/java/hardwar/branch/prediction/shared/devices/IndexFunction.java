@@ -0,0 +1,20 @@
+package hardwar.branch.prediction.shared.devices;
+
+/**
+ * Maps a branch address and a history value to the entry of a prediction history table. The entry is read as
+ * selector bits above history bits, so it can be used with the per address tables. See {@link IndexFunctions}
+ * for the implementations.
+ */
+public interface IndexFunction {
+    /**
+     * @param address the branch instruction address, the bits above the address size are ignored
+     * @param history the branch history register value
+     * @return the table entry
+     */
+    long index(long address, long history);
+
+    /**
+     * @return number of entry bits above the history bits, zero if the entry is as wide as the history
+     */
+    int selectorBits();
+}
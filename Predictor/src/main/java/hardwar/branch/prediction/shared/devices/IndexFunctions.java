@@ -0,0 +1,200 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.shared.HashMode;
+
+/**
+ * The index functions of the predictors. They work on the numeric address and history with shifts, masks and
+ * xors only.
+ */
+public final class IndexFunctions {
+    private IndexFunctions() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * the history alone, as in GAg, PAg and SAg
+     *
+     * @return the index function
+     */
+    public static IndexFunction history() {
+        return History.INSTANCE;
+    }
+
+    /**
+     * the first address bits concatenated with the history, as in GAp, PAp and SAp
+     *
+     * @param addressSize number of address bits
+     * @param historySize number of history bits
+     * @return the index function
+     */
+    public static IndexFunction concat(int addressSize, int historySize) {
+        return new Concat(addressSize, historySize);
+    }
+
+    /**
+     * the K bit hash of the address concatenated with the history, as in GAs, PAs and SAs
+     *
+     * @param addressSize number of address bits
+     * @param KSize       number of hash bits
+     * @param mode        the hash of the address
+     * @param historySize number of history bits
+     * @return the index function
+     */
+    public static IndexFunction hashConcat(int addressSize, int KSize, HashMode mode, int historySize) {
+        return new HashConcat(addressSize, KSize, mode, historySize);
+    }
+
+    /**
+     * gshare: the last address bits xor the history, the entry is as wide as the history
+     *
+     * @param addressSize number of address bits
+     * @param historySize number of history bits
+     * @return the index function
+     */
+    public static IndexFunction gshare(int addressSize, int historySize) {
+        return new GShare(addressSize, historySize);
+    }
+
+    /**
+     * gshare on the folded address: the whole address is xor folded to the history size before it is xor-ed
+     * with the history, so the high address bits take part in the index too
+     *
+     * @param addressSize number of address bits
+     * @param historySize number of history bits
+     * @return the index function
+     */
+    public static IndexFunction foldedGshare(int addressSize, int historySize) {
+        return new FoldedGShare(addressSize, historySize);
+    }
+
+    static long mask(int bits) {
+        return bits >= Long.SIZE ? -1L : (1L << bits) - 1;
+    }
+
+    private static final class History implements IndexFunction {
+        static final History INSTANCE = new History();
+
+        @Override
+        public long index(long address, long history) {
+            return history;
+        }
+
+        @Override
+        public int selectorBits() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "history";
+        }
+    }
+
+    private static final class Concat implements IndexFunction {
+        private final int addressSize;
+        private final int historySize;
+        private final long addressMask;
+
+        Concat(int addressSize, int historySize) {
+            this.addressSize = addressSize;
+            this.historySize = historySize;
+            this.addressMask = mask(addressSize);
+        }
+
+        @Override
+        public long index(long address, long history) {
+            return ((address & addressMask) << historySize) | history;
+        }
+
+        @Override
+        public int selectorBits() {
+            return addressSize;
+        }
+
+        @Override
+        public String toString() {
+            return "concat(" + addressSize + ", " + historySize + ")";
+        }
+    }
+
+    private static final class HashConcat implements IndexFunction {
+        private final int addressSize;
+        private final int KSize;
+        private final HashMode mode;
+        private final int historySize;
+
+        HashConcat(int addressSize, int KSize, HashMode mode, int historySize) {
+            this.addressSize = addressSize;
+            this.KSize = KSize;
+            this.mode = mode;
+            this.historySize = historySize;
+        }
+
+        @Override
+        public long index(long address, long history) {
+            return (CombinationalLogic.hash(address, addressSize, KSize, mode) << historySize) | history;
+        }
+
+        @Override
+        public int selectorBits() {
+            return KSize;
+        }
+
+        @Override
+        public String toString() {
+            return mode + "(" + addressSize + ", " + KSize + ", " + historySize + ")";
+        }
+    }
+
+    private static final class GShare implements IndexFunction {
+        private final int addressSize;
+        private final int historySize;
+        private final long mask;
+
+        GShare(int addressSize, int historySize) {
+            this.addressSize = addressSize;
+            this.historySize = historySize;
+            this.mask = mask(Math.min(addressSize, historySize));
+        }
+
+        @Override
+        public long index(long address, long history) {
+            return (address & mask) ^ history;
+        }
+
+        @Override
+        public int selectorBits() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "gshare(" + addressSize + ", " + historySize + ")";
+        }
+    }
+
+    private static final class FoldedGShare implements IndexFunction {
+        private final int addressSize;
+        private final int historySize;
+
+        FoldedGShare(int addressSize, int historySize) {
+            this.addressSize = addressSize;
+            this.historySize = historySize;
+        }
+
+        @Override
+        public long index(long address, long history) {
+            return CombinationalLogic.hash(address, addressSize, historySize, HashMode.XOR) ^ history;
+        }
+
+        @Override
+        public int selectorBits() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "foldedGshare(" + addressSize + ", " + historySize + ")";
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package hardwar.branch.prediction.shared.devices;
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.CountMode;
+
+/*
+cache of bit blocks which can be addressed by the integer value of the entry
+
+the entry bits are read as an unsigned number, the first bit is the MSB (same as Bit.toNumber)
+and the block is saved as a number with nColumns bits. the primitive functions do not allocate.
+ */
+public interface IndexedCache extends Cache<Bit[], Bit[]> {
+    /**
+     * check the block size of a table which is given to a predictor with its own SC size
+     *
+     * @param table    the table
+     * @param nColumns the expected number of bits in a block
+     * @return the table
+     * @throws IllegalArgumentException if the blocks of the table are not nColumns bits
+     */
+    static IndexedCache requireColumns(IndexedCache table, int nColumns) {
+        if (table.getColumns() != nColumns)
+            throw new IllegalArgumentException("block size of the table is " + table.getColumns()
+                    + " bits, the SC register is " + nColumns + " bits");
+        return table;
+    }
+
+    /**
+     * @return number of bits in a block
+     */
+    int getColumns();
+
+    /**
+     * @param entry the integer value of the address
+     * @return true if a block is associated to the address
+     */
+    boolean contains(long entry);
+
+    /**
+     * @param entry the integer value of the address
+     * @return the block value saved in the address, or zero if no block is associated to the address
+     */
+    int get(long entry);
+
+    /**
+     * @param entry the integer value of the address
+     * @param block the block value which is saved in the address
+     */
+    void put(long entry, int block);
+
+    /**
+     * return the block associated with the entry. If no block is associated to the entry then save the default
+     * block in the entry and return it.
+     *
+     * @param entry        the integer value of the address
+     * @param defaultBlock default block if the address is not associated with any block in cache
+     * @return the block which is saved in the address
+     */
+    int setDefault(long entry, int defaultBlock);
+
+    /**
+     * read-modify-write of a counter block. the block of the entry is read (or initialized with the default
+     * block), passed to the counter and the counted value is saved in the same entry.
+     *
+     * @param entry        the integer value of the address
+     * @param defaultBlock default block if the address is not associated with any block in cache
+     * @param up           the counter direction
+     * @param mode         the counter mode
+     * @return the block which was saved in the address before counting
+     */
+    default int getAndCount(long entry, int defaultBlock, boolean up, CountMode mode) {
+        int block = setDefault(entry, defaultBlock);
+        put(entry, CombinationalLogic.count(block, getColumns(), up, mode));
+        return block;
+    }
+}
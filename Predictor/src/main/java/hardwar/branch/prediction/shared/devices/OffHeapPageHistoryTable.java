@@ -0,0 +1,399 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our off heap Page History Table model
+ * read below assumptions about the off heap PHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) as same as the flat PHT, the PHT has exactly nRows blocks, the entry is read as an unsigned number
+ * and it is used as the row index of the block. each block is a counter of at most 8 bits in one byte,
+ * and a separate bit set remembers which rows are associated.
+ *
+ * 2) the blocks and the bit set are saved in direct byte buffers (or a memory mapped file) outside of
+ * the java heap, in segments of 2^30 bytes, so the table can be larger than an array and does not add
+ * to the garbage collection work.
+ *
+ * 3) the table must be closed when it is not used anymore. a mapped table writes its blocks to the file
+ * on close and a table which is mapped on an existing file of the same size continues with its blocks.
+ * the table can not be used after close.
+ *
+ * 4) there is no checker if the entry is bigger than the last row, the buffer bounds check is the only guard.
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class OffHeapPageHistoryTable implements FlatCache, Closeable {
+    static final int SEGMENT_BITS = 30;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+    private final long nRows; // number of PHT entries
+    private final int nColumns; // number of bits in a block
+    private final int blockMask; // the nColumns bits of a block
+    private final int addressWidth; // number of bits needed for printing an entry
+    private final FileChannel channel; // the mapped file, null if the buffers are direct
+    private ByteBuffer[] blocks; // one byte per row, null after close
+    private ByteBuffer[] present; // one bit per row, null after close
+    private long released; // rows which are dropped by clear, for the allocation count
+
+    /**
+     * Creates a table in direct buffers
+     *
+     * @param nRows    number of rows of the table
+     * @param nColumns number of bits in a block
+     */
+    public OffHeapPageHistoryTable(long nRows, int nColumns) {
+        checkSize(nRows, nColumns);
+        this.nRows = nRows;
+        this.nColumns = nColumns;
+        this.blockMask = (1 << nColumns) - 1;
+        this.addressWidth = addressWidth(nRows);
+        this.channel = null;
+        this.blocks = allocate(nRows);
+        this.present = allocate(presentBytes(nRows));
+    }
+
+    private OffHeapPageHistoryTable(long nRows, int nColumns, FileChannel channel) throws IOException {
+        this.nRows = nRows;
+        this.nColumns = nColumns;
+        this.blockMask = (1 << nColumns) - 1;
+        this.addressWidth = addressWidth(nRows);
+        this.channel = channel;
+        this.blocks = map(channel, 0, nRows);
+        this.present = map(channel, nRows, presentBytes(nRows));
+    }
+
+    /**
+     * Creates a table which is mapped on the file. the file has nRows bytes of blocks followed by one bit per
+     * row, if the file already has this size its blocks are used, otherwise it is resized and cleared.
+     *
+     * @param file     the table file
+     * @param nRows    number of rows of the table
+     * @param nColumns number of bits in a block
+     * @return the mapped table
+     * @throws IOException if the file can not be mapped
+     */
+    public static OffHeapPageHistoryTable map(Path file, long nRows, int nColumns) throws IOException {
+        checkSize(nRows, nColumns);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long size = nRows + presentBytes(nRows);
+            if (channel.size() != size) {
+                // a new or resized file starts with an empty table
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+            return new OffHeapPageHistoryTable(nRows, nColumns, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void checkSize(long nRows, int nColumns) {
+        if (nRows <= 0) throw new IllegalArgumentException("number of rows must be positive");
+        if (nColumns <= 0 || nColumns > FlatPageHistoryTable.MAX_COLUMNS)
+            throw new IllegalArgumentException("block size must be between 1 and "
+                    + FlatPageHistoryTable.MAX_COLUMNS + " bits");
+    }
+
+    private static int addressWidth(long nRows) {
+        return Math.max(1, Long.SIZE - Long.numberOfLeadingZeros(nRows - 1));
+    }
+
+    private static long presentBytes(long nRows) {
+        return (nRows + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    private static ByteBuffer[] allocate(long bytes) {
+        ByteBuffer[] segments = new ByteBuffer[(int) ((bytes + SEGMENT_MASK) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            long offset = (long) i << SEGMENT_BITS;
+            segments[i] = ByteBuffer.allocateDirect((int) Math.min(1L << SEGMENT_BITS, bytes - offset));
+        }
+        return segments;
+    }
+
+    private static ByteBuffer[] map(FileChannel channel, long position, long bytes) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[(int) ((bytes + SEGMENT_MASK) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            long offset = (long) i << SEGMENT_BITS;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position + offset,
+                    Math.min(1L << SEGMENT_BITS, bytes - offset));
+        }
+        return segments;
+    }
+
+    /**
+     * @return number of rows of the table
+     */
+    public long getRows() {
+        return nRows;
+    }
+
+    @Override
+    public int getColumns() {
+        return nColumns;
+    }
+
+    /**
+     * @return true if the table is saved in a mapped file
+     */
+    public boolean isMapped() {
+        return channel != null;
+    }
+
+    private ByteBuffer[] blocks() {
+        if (blocks == null) throw new IllegalStateException("the PHT is closed");
+        return blocks;
+    }
+
+    private ByteBuffer[] present() {
+        if (present == null) throw new IllegalStateException("the PHT is closed");
+        return present;
+    }
+
+    @Override
+    public boolean contains(long entry) {
+        long index = entry >>> 3;
+        int bits = present()[(int) (index >>> SEGMENT_BITS)].get((int) index & SEGMENT_MASK);
+        return (bits & (1 << (entry & 7))) != 0;
+    }
+
+    /**
+     * marks the row as associated
+     *
+     * @param entry the row
+     * @return true if the row was associated before
+     */
+    private boolean associate(long entry) {
+        long index = entry >>> 3;
+        ByteBuffer segment = present()[(int) (index >>> SEGMENT_BITS)];
+        int offset = (int) index & SEGMENT_MASK;
+        int bits = segment.get(offset);
+        int mask = 1 << (entry & 7);
+        if ((bits & mask) != 0) return true;
+        segment.put(offset, (byte) (bits | mask));
+        return false;
+    }
+
+    @Override
+    public int get(long entry) {
+        // clear only drops the present bits, the blocks are still in the segments
+        if (!contains(entry)) return 0;
+        return blocks()[(int) (entry >>> SEGMENT_BITS)].get((int) entry & SEGMENT_MASK) & 0xFF;
+    }
+
+    @Override
+    public void put(long entry, int block) {
+        // the bits above the block size are dropped, as same as the flat PHT
+        blocks()[(int) (entry >>> SEGMENT_BITS)].put((int) entry & SEGMENT_MASK, (byte) (block & blockMask));
+        associate(entry);
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultBlock) {
+        ByteBuffer segment = blocks()[(int) (entry >>> SEGMENT_BITS)];
+        int offset = (int) entry & SEGMENT_MASK;
+        if (!associate(entry)) segment.put(offset, (byte) (defaultBlock & blockMask));
+        return segment.get(offset) & 0xFF;
+    }
+
+    @Override
+    public int getAndCount(long entry, int defaultBlock, boolean up, CountMode mode) {
+        ByteBuffer segment = blocks()[(int) (entry >>> SEGMENT_BITS)];
+        int offset = (int) entry & SEGMENT_MASK;
+        if (!associate(entry)) segment.put(offset, (byte) (defaultBlock & blockMask));
+        int block = segment.get(offset) & 0xFF;
+        segment.put(offset, (byte) CounterEngine.next(block, nColumns, up, mode));
+        return block;
+    }
+
+    /**
+     * Get the value associated with the given key from the cache.
+     *
+     * @param entry the key to look up in the cache
+     * @return a copy of the value associated with the key, or null if the key is not found
+     */
+    @Override
+    public Bit[] get(Bit[] entry) {
+        long row = BitVector.toLong(entry);
+        return contains(row) ? BitVector.of(get(row), nColumns).toBits() : null;
+    }
+
+    /**
+     * Insert a new key-value pair into the cache.
+     *
+     * @param entry the key to insert into the cache
+     * @param value the value to associate with the key
+     * @throws RuntimeException if the length of the block is not equal to nColumns
+     */
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        put(BitVector.toLong(entry), (int) BitVector.toLong(value));
+    }
+
+    /**
+     * put the value in the entry if the entry is not associated to any block.
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key) if the key is not mapped to any not-null data
+     */
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        if (!contains(BitVector.toLong(entry))) put(entry, value);
+    }
+
+    /**
+     * Returns the value associated with the given key, or a default value if the key is not found in the cache.
+     * If the key is not found in the cache, the default value is inserted into the cache.
+     *
+     * @param entry        the address to look up in the cache
+     * @param defaultValue the default value to insert into the cache if the key is not found
+     * @return a copy of the value associated with the key
+     */
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        putIfAbsent(entry, defaultValue);
+        return get(entry);
+    }
+
+    /**
+     * Clear all entries from the cache. the bit set is zeroed, so it takes a pass over the rows, unlike the
+     * generation clear of the flat PHT.
+     */
+    @Override
+    public void clear() {
+        released += getOccupancy();
+        byte[] zeros = new byte[8192];
+        for (ByteBuffer segment : present()) {
+            ByteBuffer buffer = segment.duplicate();
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+            }
+        }
+    }
+
+    @Override
+    public long getOccupancy() {
+        long occupied = 0;
+        for (ByteBuffer segment : present()) {
+            ByteBuffer bits = segment.duplicate();
+            bits.clear();
+            while (bits.remaining() >= Long.BYTES) occupied += Long.bitCount(bits.getLong());
+            while (bits.hasRemaining()) occupied += Integer.bitCount(bits.get() & 0xFF);
+        }
+        return occupied;
+    }
+
+    @Override
+    public long getCapacity() {
+        return nRows;
+    }
+
+    @Override
+    public long getAllocations() {
+        return released + getOccupancy();
+    }
+
+    /**
+     * the segments are written to the channel without copying them to the heap
+     */
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(nRows);
+        out.writeLong(nColumns);
+        out.writeLong(getAllocations());
+        for (ByteBuffer segment : present()) out.writeBuffer(segment);
+        for (ByteBuffer segment : blocks()) out.writeBuffer(segment);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(nRows, "number of rows");
+        in.expect(nColumns, "block size");
+        long allocated = in.readLong();
+        for (ByteBuffer segment : present()) in.readBuffer(segment);
+        for (ByteBuffer segment : blocks()) in.readBuffer(segment);
+        // the allocation count of the snapshot continues, the rows which it had dropped are released
+        released = allocated - getOccupancy();
+    }
+
+    /**
+     * writes the blocks of a mapped table to its file and releases the buffers. the direct buffers are
+     * freed when they are collected, the table does not keep them after close.
+     *
+     * @throws IOException if the file can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (blocks == null) return;
+        if (channel != null) {
+            for (ByteBuffer segment : blocks) ((MappedByteBuffer) segment).force();
+            for (ByteBuffer segment : present) ((MappedByteBuffer) segment).force();
+            channel.close();
+        }
+        blocks = null;
+        present = null;
+    }
+
+    /**
+     * Returns a string representation of the current state of the PHT.
+     *
+     * @return a table with the address and block data for each associated row in the PHT
+     */
+    @Override
+    public String monitor() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("+----------------------------------+\n");
+        sb.append(String.format("| %-19s | %-10s |\n", "Address", "Block"));
+        sb.append("|---------------------|------------|\n");
+        for (long row = 0; row < nRows; row++) {
+            if (contains(row)) appendRow(sb, row, row, addressWidth);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String monitor(long fromRow, int rows, int addressWidth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("+----------------------------------+\n");
+        sb.append(String.format("| %-19s | %-10s |\n", "Address", "Block"));
+        sb.append("|---------------------|------------|\n");
+        for (long row = fromRow; row < fromRow + rows; row++) {
+            if (contains(row)) appendRow(sb, row, row - fromRow, addressWidth);
+        }
+        return sb.toString();
+    }
+
+    private void appendRow(StringBuilder sb, long row, long address, int addressWidth) {
+        String addressBits = BitVector.of(address, addressWidth).toString();
+        String block = BitVector.of(get(row), nColumns).toString();
+        if (addressBits.length() > 16) {
+            sb.append(String.format("| %-16s... | %-10s |\n", addressBits.substring(0, 16), block));
+        } else {
+            sb.append(String.format("| %-19s | %-10s |\n", addressBits, block));
+        }
+        sb.append("+----------------------------------+\n");
+    }
+}
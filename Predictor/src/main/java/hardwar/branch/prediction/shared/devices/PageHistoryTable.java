@@ -22,23 +22,37 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class PageHistoryTable implements Cache<Bit[], Bit[]> {
 
     private final int nRows; // number of PHT entries
     private final int nColumns; // number of bits in a block
     private final Map<String, Bit[]> PHT; // save entry and blocks
+    private final LongAdder allocations; // entries which are added to the PHT, it is not reset by clear
 
 
     public PageHistoryTable(int nRows, int nColumns) {
+        this(nRows, nColumns, new LongAdder());
+    }
+
+    /**
+     * @param allocations the allocation counter, it can be shared between the PHTs of a PAPHT
+     */
+    PageHistoryTable(int nRows, int nColumns, LongAdder allocations) {
         this.nRows = nRows;
         this.nColumns = nColumns;
         this.PHT = new TreeMap<>();
+        this.allocations = allocations;
     }
 
 
@@ -70,7 +84,7 @@ public class PageHistoryTable implements Cache<Bit[], Bit[]> {
 
         // Convert the entry array to a string and use it as the key for PHT.put()
         String entryS = Bit.arrayToString(entry);
-        PHT.put(entryS, Arrays.copyOf(value, nColumns));
+        if (PHT.put(entryS, Arrays.copyOf(value, nColumns)) == null) allocations.increment();
     }
 
     /**
@@ -105,13 +119,118 @@ public class PageHistoryTable implements Cache<Bit[], Bit[]> {
     }
 
     /**
-     * Clear all entries from the cache.
+     * Packed version of get, the entry is used as key without converting it to a bit array.
+     *
+     * @param entry the key to look up in the cache
+     * @return the value associated with the key, or null if the key is not found
+     */
+    public BitVector get(BitVector entry) {
+        Bit[] block = PHT.get(entry.toString());
+        return block == null ? null : BitVector.of(block);
+    }
+
+    /**
+     * Packed version of put
+     *
+     * @param entry the key to insert into the cache
+     * @param value the value to associate with the key
+     * @throws RuntimeException if the length of the block is not equal to nColumns
+     */
+    public void put(BitVector entry, BitVector value) {
+        if (value.length() != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        if (PHT.put(entry.toString(), value.toBits()) == null) allocations.increment();
+    }
+
+    /**
+     * Packed version of putIfAbsent
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key) if the key is not mapped to any not-null data
+     */
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        if (!PHT.containsKey(entry.toString())) put(entry, value);
+    }
+
+    /**
+     * Packed version of setDefault
+     *
+     * @param entry        the address to look up in the cache
+     * @param defaultValue the default value to insert into the cache if the key is not found
+     * @return the value associated with the key, or the default value if the key is not found
+     */
+    public BitVector setDefault(BitVector entry, BitVector defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        putIfAbsent(entry, defaultValue);
+        return get(entry);
+    }
+
+    /**
+     * Clear all entries from the cache, the tree map drops its entries without visiting them.
      */
     @Override
     public void clear() {
         PHT.clear();
     }
 
+    @Override
+    public long getOccupancy() {
+        return PHT.size();
+    }
+
+    @Override
+    public long getCapacity() {
+        return nRows;
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    /**
+     * writes the allocation count, the number of entries, then each entry and its block
+     */
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(nColumns);
+        out.writeLong(allocations.sum());
+        writeEntries(out);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(nColumns, "block size");
+        long allocated = in.readLong();
+        readEntries(in);
+        allocations.reset();
+        allocations.add(allocated);
+    }
+
+    /**
+     * writes the entries without the allocation count, which can be shared with the other PHTs of a PAPHT
+     */
+    void writeEntries(SnapshotOutput out) throws IOException {
+        out.writeInt(PHT.size());
+        for (Map.Entry<String, Bit[]> block : PHT.entrySet()) {
+            out.writeString(block.getKey());
+            out.writeBits(block.getValue());
+        }
+    }
+
+    /**
+     * replaces the entries with the entries which are written by writeEntries, the allocation count is not changed
+     */
+    void readEntries(SnapshotInput in) throws IOException {
+        PHT.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            String entry = in.readString();
+            PHT.put(entry, in.readBits(nColumns));
+        }
+    }
+
     /**
      * Returns a string representation of the current state of the PHT.
      *
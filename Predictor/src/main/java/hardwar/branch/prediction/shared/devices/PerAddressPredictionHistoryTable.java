@@ -18,32 +18,207 @@ package hardwar.branch.prediction.shared.devices;
  *
  * 5) there is no checker if the in value of PAPHT entry is bigger than the cache last entry address.
  * therefore, be aware! your bug won't throw any error here
+ *
+ * 6) in the flattened mode all the PHTs are saved in one contiguous flat PHT. the block of a (selector, row)
+ * pair is saved in the (selector << log2(nRowsPerPHT)) | row index, and a PHT is associated to the PAPHT
+ * when one of its blocks is initialized (same as the lazy mode).
+ *
+ * 7) the flat PHT can be an off heap PHT which is given to the constructor, it is not closed by the PAPHT.
+ *
+ * 8) create flattens the PAPHT only up to 2^MAX_EAGER_ENTRY_BITS blocks, because the flat PHT is allocated at
+ * once. a larger PAPHT allocates its PHTs lazily, when one of their blocks is initialized.
+ *
+ * 9) an entry of the flattened PAPHT whose row bits do not fit in a PHT is rejected, the bits are not masked into
+ * the next PHT.
+ *
+ * 10) clear does not visit the PHTs. the lazy PAPHT drops its PHTs at once, and the flattened PAPHT moves the
+ * associated PHTs to the next generation and clears its flat PHT. a flat PHT clears in constant time too, but an
+ * off heap PHT zeroes its bit set, so its clear still takes a pass over the rows.
  * ------------------------------------------------------
  */
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
 
-public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
+public class PerAddressPredictionHistoryTable implements IndexedCache {
+    static final int MAX_FLAT_ENTRY_BITS = 30; // the flat PHT is indexed by int, keep it below the array size limit
+    static final int MAX_EAGER_ENTRY_BITS = 20; // create flattens up to 2^20 blocks, about 1 MB with its bit set
 
     private final int nPCSelector; // number of bits from pc which determine which PHT in PAPHT must be used.
     private final int nRowsPerPHT; // number of rows per PHT
     private final int nColumnsPerBlock; // number of columns per block in a PHT
-    private final Map<String, Cache<Bit[], Bit[]>> PAPHT; // per address prediction history table. string represent the
+    private final int nRowBits; // number of bits which select a row of a PHT
+    private final Map<String, PageHistoryTable> PAPHT; // per address prediction history table. string represent the
     // PHT which must be used and the cache is the PHT associated to that slice of PC
+    private final FlatCache flatPAPHT; // all the PHTs in one table, null if the PAPHT is not flattened
+    private final long[] associatedPHTs; // generation bits, one bit per selector in the flattened mode,
+    // set if the PHT is associated
+    private long epoch = GenerationBits.FIRST_EPOCH; // generation of the associated PHTs, in the high half
+    private final LongAdder allocations = new LongAdder(); // entries of the lazy PAPHT, shared by its PHTs
 
 
     public PerAddressPredictionHistoryTable(int nPCSelector, int nRowsPerPHT, int nColumnsPerBlock) {
+        this(nPCSelector, nRowsPerPHT, nColumnsPerBlock, false);
+    }
+
+    /**
+     * @param nPCSelector      number of bits which select the PHT
+     * @param nRowsPerPHT      number of rows per PHT, must be a power of two in the flattened mode
+     * @param nColumnsPerBlock number of bits in a block
+     * @param flattened        if true, all the PHTs are allocated in one contiguous table
+     * @throws IllegalArgumentException if the flattened table can not be allocated in one array
+     */
+    public PerAddressPredictionHistoryTable(int nPCSelector, int nRowsPerPHT, int nColumnsPerBlock, boolean flattened) {
         this.nPCSelector = nPCSelector;
         this.nRowsPerPHT = nRowsPerPHT;
         this.nColumnsPerBlock = nColumnsPerBlock;
+        this.nRowBits = Integer.SIZE - Integer.numberOfLeadingZeros(nRowsPerPHT - 1);
+
+        if (flattened) {
+            if (Integer.bitCount(nRowsPerPHT) != 1)
+                throw new IllegalArgumentException("number of rows per PHT must be a power of two");
+            if (nPCSelector + nRowBits > MAX_FLAT_ENTRY_BITS)
+                throw new IllegalArgumentException("PAPHT is too large to be flattened");
+            this.PAPHT = null;
+            this.flatPAPHT = new FlatPageHistoryTable(nRowsPerPHT << nPCSelector, nColumnsPerBlock);
+            this.associatedPHTs = GenerationBits.create(1L << nPCSelector);
+        } else {
+            // initialize the Per Address Predication History Table
+            this.PAPHT = new TreeMap<>();
+            this.flatPAPHT = null;
+            this.associatedPHTs = null;
+        }
+    }
+
+    /**
+     * Creates a flattened PAPHT which saves all the PHTs in the off heap table, so a PAPHT with large PHT
+     * selectors does not live on the heap. The caller closes the table after the PAPHT is not used anymore.
+     *
+     * @param nPCSelector number of bits which select the PHT
+     * @param nRowsPerPHT number of rows per PHT, must be a power of two
+     * @param table       the off heap table with at least nRowsPerPHT * 2^nPCSelector rows
+     * @throws IllegalArgumentException if the PHTs do not fit in the table
+     */
+    public PerAddressPredictionHistoryTable(int nPCSelector, int nRowsPerPHT, OffHeapPageHistoryTable table) {
+        this.nPCSelector = nPCSelector;
+        this.nRowsPerPHT = nRowsPerPHT;
+        this.nColumnsPerBlock = table.getColumns();
+        this.nRowBits = Integer.SIZE - Integer.numberOfLeadingZeros(nRowsPerPHT - 1);
+        if (Integer.bitCount(nRowsPerPHT) != 1)
+            throw new IllegalArgumentException("number of rows per PHT must be a power of two");
+        if (nPCSelector >= Integer.SIZE - 1 || table.getRows() < (long) nRowsPerPHT << nPCSelector)
+            throw new IllegalArgumentException("the PHTs do not fit in the table");
+        this.PAPHT = null;
+        this.flatPAPHT = table;
+        this.associatedPHTs = GenerationBits.create(1L << nPCSelector);
+    }
+
+    /**
+     * Creates a flattened PAPHT if all the PHTs fit in one small flat table, otherwise the lazy PAPHT is created.
+     * The flat table is allocated at once, so it is only used up to 2^MAX_EAGER_ENTRY_BITS blocks.
+     *
+     * @param nPCSelector      number of bits which select the PHT
+     * @param nRowsPerPHT      number of rows per PHT
+     * @param nColumnsPerBlock number of bits in a block
+     * @return the per address prediction history table
+     */
+    public static PerAddressPredictionHistoryTable create(int nPCSelector, int nRowsPerPHT, int nColumnsPerBlock) {
+        int nRowBits = Integer.SIZE - Integer.numberOfLeadingZeros(nRowsPerPHT - 1);
+        boolean fits = Integer.bitCount(nRowsPerPHT) == 1
+                && nPCSelector + nRowBits <= MAX_EAGER_ENTRY_BITS
+                && nColumnsPerBlock <= FlatPageHistoryTable.MAX_COLUMNS;
+        return new PerAddressPredictionHistoryTable(nPCSelector, nRowsPerPHT, nColumnsPerBlock, fits);
+    }
+
+    /**
+     * @return true if all the PHTs are saved in one contiguous table
+     */
+    public boolean isFlattened() {
+        return flatPAPHT != null;
+    }
+
+    @Override
+    public int getColumns() {
+        return nColumnsPerBlock;
+    }
+
+    /**
+     * @param entry the PHT selector bits followed by log2(nRowsPerPHT) row bits, as a number
+     * @return true if a block is associated to the address
+     */
+    @Override
+    public boolean contains(long entry) {
+        if (flatPAPHT != null) return flatPAPHT.contains(entry);
+
+        PageHistoryTable PHT = PAPHT.get(getCacheSelector(entry));
+        return PHT != null && PHT.get(getBlockSelector(entry)) != null;
+    }
+
+    /**
+     * @param entry the PHT selector bits followed by log2(nRowsPerPHT) row bits, as a number
+     * @return the block value saved in the address, or zero if no block is associated to the address
+     */
+    @Override
+    public int get(long entry) {
+        if (flatPAPHT != null) return flatPAPHT.get(entry);
+
+        PageHistoryTable PHT = PAPHT.get(getCacheSelector(entry));
+        BitVector block = PHT == null ? null : PHT.get(getBlockSelector(entry));
+        return block == null ? 0 : block.toInt();
+    }
+
+    /**
+     * @param entry the PHT selector bits followed by log2(nRowsPerPHT) row bits, as a number
+     * @param block the block value which is saved in the address
+     * @throws RuntimeException if the PHT is not associated to the PAPHT
+     */
+    @Override
+    public void put(long entry, int block) {
+        if (flatPAPHT != null) {
+            if (!isAssociated(entry >>> nRowBits)) throw new RuntimeException("The PHT is not associated to the PAPHT");
+            flatPAPHT.put(entry, block);
+        } else {
+            put(toVector(entry), BitVector.of(block, nColumnsPerBlock));
+        }
+    }
+
+    /**
+     * @param entry        the PHT selector bits followed by log2(nRowsPerPHT) row bits, as a number
+     * @param defaultBlock default block if the address is not associated with any block in cache
+     * @return the block which is saved in the address
+     */
+    @Override
+    public int setDefault(long entry, int defaultBlock) {
+        if (flatPAPHT != null) {
+            associate(entry >>> nRowBits);
+            return flatPAPHT.setDefault(entry, defaultBlock);
+        }
+        return setDefault(toVector(entry), BitVector.of(defaultBlock, nColumnsPerBlock)).toInt();
+    }
+
+    /**
+     * @param entry        the PHT selector bits followed by log2(nRowsPerPHT) row bits, as a number
+     * @param defaultBlock default block if the address is not associated with any block in cache
+     * @param up           the counter direction
+     * @param mode         the counter mode
+     * @return the block which was saved in the address before counting
+     */
+    @Override
+    public int getAndCount(long entry, int defaultBlock, boolean up, CountMode mode) {
+        if (flatPAPHT == null) return IndexedCache.super.getAndCount(entry, defaultBlock, up, mode);
 
-        // initialize the Per Address Predication History Table
-        this.PAPHT = new TreeMap<>();
+        associate(entry >>> nRowBits);
+        return flatPAPHT.getAndCount(entry, defaultBlock, up, mode);
     }
 
     /**
@@ -53,10 +228,15 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
      */
     @Override
     public Bit[] get(Bit[] entry) {
+        if (flatPAPHT != null) {
+            long index = toFlatIndex(entry);
+            return flatPAPHT.contains(index) ? BitVector.of(flatPAPHT.get(index), nColumnsPerBlock).toBits() : null;
+        }
+
         String cacheSelector = getCacheSelector(entry);
         Bit[] blockSelector = getBlockSelector(entry);
 
-        Cache<Bit[], Bit[]> PHT = PAPHT.get(cacheSelector);
+        PageHistoryTable PHT = PAPHT.get(cacheSelector);
         return PHT.get(blockSelector);
     }
 
@@ -73,11 +253,15 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
         if (value.length != nColumnsPerBlock) {
             throw new RuntimeException("invalid number of bits for cache block");
         }
+        if (flatPAPHT != null) {
+            put(toFlatIndex(entry), (int) BitVector.toLong(value));
+            return;
+        }
 
         String cacheSelector = getCacheSelector(entry);
         Bit[] blockSelector = getBlockSelector(entry);
 
-        Cache<Bit[], Bit[]> PHT = PAPHT.get(cacheSelector);
+        PageHistoryTable PHT = PAPHT.get(cacheSelector);
         if (PHT == null) throw new RuntimeException("The PHT is not associated to the PAPHT");
         PHT.put(blockSelector, value);
     }
@@ -95,13 +279,17 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
         if (value.length != nColumnsPerBlock) {
             throw new RuntimeException("invalid number of bits for cache block");
         }
+        if (flatPAPHT != null) {
+            setDefault(toFlatIndex(entry), (int) BitVector.toLong(value));
+            return;
+        }
 
         String cacheSelector = getCacheSelector(entry);
         Bit[] blockSelector = getBlockSelector(entry);
 
-        Cache<Bit[], Bit[]> PHT = PAPHT.get(cacheSelector);
+        PageHistoryTable PHT = PAPHT.get(cacheSelector);
         if (PHT == null) {
-            PHT = new PageHistoryTable(nRowsPerPHT, nColumnsPerBlock);
+            PHT = new PageHistoryTable(nRowsPerPHT, nColumnsPerBlock, allocations);
             PAPHT.put(cacheSelector, PHT);
         }
         PHT.putIfAbsent(blockSelector, value);
@@ -120,6 +308,81 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
         return get(entry);
     }
 
+    /**
+     * Packed version of get, the selector and block bits are sliced from the vector without copying
+     * the entry into bit arrays.
+     *
+     * @param entry the address, first nPCSelector bits is used for finding the associated PHT
+     * @return the value associated with the key, or null if the key is not found
+     */
+    public BitVector get(BitVector entry) {
+        if (flatPAPHT != null) {
+            long index = toFlatIndex(entry);
+            return flatPAPHT.contains(index) ? BitVector.of(flatPAPHT.get(index), nColumnsPerBlock) : null;
+        }
+
+        PageHistoryTable PHT = PAPHT.get(entry.slice(0, nPCSelector).toString());
+        return PHT.get(entry.slice(nPCSelector, entry.length()));
+    }
+
+    /**
+     * Packed version of put
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key)
+     */
+    public void put(BitVector entry, BitVector value) {
+        if (value.length() != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        if (flatPAPHT != null) {
+            put(toFlatIndex(entry), value.toInt());
+            return;
+        }
+
+        PageHistoryTable PHT = PAPHT.get(entry.slice(0, nPCSelector).toString());
+        if (PHT == null) throw new RuntimeException("The PHT is not associated to the PAPHT");
+        PHT.put(entry.slice(nPCSelector, entry.length()), value);
+    }
+
+    /**
+     * Packed version of putIfAbsent
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key) if the key is not mapped to any not-null data
+     */
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        if (value.length() != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        if (flatPAPHT != null) {
+            setDefault(toFlatIndex(entry), value.toInt());
+            return;
+        }
+
+        String cacheSelector = entry.slice(0, nPCSelector).toString();
+        PageHistoryTable PHT = PAPHT.get(cacheSelector);
+        if (PHT == null) {
+            PHT = new PageHistoryTable(nRowsPerPHT, nColumnsPerBlock, allocations);
+            PAPHT.put(cacheSelector, PHT);
+        }
+        PHT.putIfAbsent(entry.slice(nPCSelector, entry.length()), value);
+    }
+
+    /**
+     * Packed version of setDefault
+     *
+     * @param entry        the address
+     * @param defaultValue default value if the address is not associated with any block in cache
+     * @return the old value if exist otherwise the default value
+     */
+    public BitVector setDefault(BitVector entry, BitVector defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        putIfAbsent(entry, defaultValue);
+        return get(entry);
+    }
+
     /**
      * Get the cache selector string for PAPHT
      *
@@ -140,16 +403,130 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
         return Arrays.copyOfRange(entry, nPCSelector, entry.length);
     }
 
+    private String getCacheSelector(long entry) {
+        return BitVector.of(entry >>> nRowBits, nPCSelector).toString();
+    }
+
+    private BitVector getBlockSelector(long entry) {
+        return BitVector.of(entry, nRowBits);
+    }
+
+    private BitVector toVector(long entry) {
+        return BitVector.of(entry, nPCSelector + nRowBits);
+    }
 
     /**
-     * Clear all the caches.
+     * @param entry the address, the bits after the selector bits are the row of the PHT
+     * @return the index of the block in the flattened PHT
+     * @throws IllegalArgumentException if the entry is shorter than the selector or its row does not fit in a PHT
+     */
+    private long toFlatIndex(Bit[] entry) {
+        return toFlatIndex(BitVector.toLong(entry), entry.length);
+    }
+
+    private long toFlatIndex(BitVector entry) {
+        return toFlatIndex(entry.toLong(), entry.length());
+    }
+
+    private long toFlatIndex(long value, int length) {
+        int blockBits = length - nPCSelector;
+        if (blockBits < 0) throw new IllegalArgumentException("the entry is shorter than the PHT selector");
+        long selector = blockBits >= Long.SIZE ? 0 : value >>> blockBits;
+        long row = value & (blockBits >= Long.SIZE ? -1L : (1L << blockBits) - 1);
+        if (row >>> nRowBits != 0) throw new IllegalArgumentException("the row does not fit in a PHT");
+        return (selector << nRowBits) | row;
+    }
+
+    private boolean isAssociated(long selector) {
+        return GenerationBits.get(associatedPHTs, epoch, (int) selector);
+    }
+
+    private void associate(long selector) {
+        GenerationBits.set(associatedPHTs, epoch, (int) selector);
+    }
+
+
+    /**
+     * Clear all the caches, without visiting the PHTs.
      */
     @Override
     public void clear() {
-        PAPHT.forEach((k, v) -> v.clear());
+        if (flatPAPHT != null) {
+            flatPAPHT.clear();
+            epoch = GenerationBits.next(associatedPHTs, epoch);
+            return;
+        }
         PAPHT.clear();
     }
 
+    @Override
+    public long getOccupancy() {
+        if (flatPAPHT != null) return flatPAPHT.getOccupancy();
+        long occupied = 0;
+        for (PageHistoryTable PHT : PAPHT.values()) occupied += PHT.getOccupancy();
+        return occupied;
+    }
+
+    @Override
+    public long getCapacity() {
+        if (nPCSelector + nRowBits >= Long.SIZE - 1) return Long.MAX_VALUE;
+        return (long) nRowsPerPHT << nPCSelector;
+    }
+
+    @Override
+    public long getAllocations() {
+        if (flatPAPHT != null) return flatPAPHT.getAllocations();
+        return allocations.sum();
+    }
+
+    /**
+     * the flattened PAPHT writes the associated PHTs and its table, the lazy PAPHT writes its allocation count and
+     * each PHT after its selector
+     */
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(nPCSelector);
+        out.writeLong(nRowsPerPHT);
+        out.writeLong(nColumnsPerBlock);
+        out.writeBoolean(flatPAPHT != null);
+        if (flatPAPHT != null) {
+            out.writeLong(epoch);
+            out.writeLongs(associatedPHTs);
+            flatPAPHT.snapshot(out);
+            return;
+        }
+        out.writeLong(allocations.sum());
+        out.writeInt(PAPHT.size());
+        for (Map.Entry<String, PageHistoryTable> PHT : PAPHT.entrySet()) {
+            out.writeString(PHT.getKey());
+            PHT.getValue().writeEntries(out);
+        }
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(nPCSelector, "PHT selector size");
+        in.expect(nRowsPerPHT, "number of rows per PHT");
+        in.expect(nColumnsPerBlock, "block size");
+        if (in.readBoolean() != (flatPAPHT != null)) throw new IOException("snapshot has another PAPHT layout");
+        if (flatPAPHT != null) {
+            epoch = in.readLong();
+            in.readLongs(associatedPHTs);
+            flatPAPHT.restore(in);
+            return;
+        }
+        long allocated = in.readLong();
+        PAPHT.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            String selector = in.readString();
+            PageHistoryTable PHT = new PageHistoryTable(nRowsPerPHT, nColumnsPerBlock, allocations);
+            PHT.readEntries(in);
+            PAPHT.put(selector, PHT);
+        }
+        allocations.reset();
+        allocations.add(allocated);
+    }
+
     /**
      * Returns a string representing the current state of the Per Address Prediction History Table.
      * The string includes a separate monitor report for each PHT in the PAPHT map, along with the selector
@@ -160,6 +537,17 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
     @Override
     public String monitor() {
         StringBuilder sb = new StringBuilder();
+        if (flatPAPHT != null) {
+            for (int selector = 0; selector < 1 << nPCSelector; selector++) {
+                if (!isAssociated(selector)) continue;
+                sb.append("PHT for selector: ");
+                sb.append(BitVector.of(selector, nPCSelector));
+                sb.append("\n");
+                sb.append(flatPAPHT.monitor((long) selector << nRowBits, nRowsPerPHT, nRowBits));
+                sb.append("\n");
+            }
+            return sb.toString();
+        }
         PAPHT.forEach((k, v) -> {
             sb.append("PHT for selector: ");
             sb.append(k);
@@ -11,22 +11,43 @@ package hardwar.branch.prediction.shared.devices;
  * 2) The Register Bank Memory is designed in a lazy manner. i.e. the registers
  * are not initialized in the model initialization. If any specific register is
  * needed then it will be initialized.
+ *
+ * 3) If the registers fit in a long and the selector is small enough, the registers are saved
+ * in a long array indexed by the selector value. the readBits and shiftIn functions work on that
+ * array in place, so they do not return copies and do not allocate.
+ *
+ * 4) clear does not depend on the number of registers. each register of the long array remembers the generation
+ * which initialized it, a register of an older generation is initialized again with zero when it is used.
  * -------------------------------------------------------
  */
 
+import hardwar.branch.prediction.shared.BitVector;
 import hardwar.branch.prediction.shared.Monitorable;
+import hardwar.branch.prediction.shared.Occupancy;
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+import hardwar.branch.prediction.shared.Snapshotable;
 
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
-public class RegisterBank implements Monitorable {
+public class RegisterBank implements Monitorable, Snapshotable, Occupancy {
+    static final int MAX_DENSE_SELECTOR_BITS = 20; // largest selector which is saved in the long array
+
     private final int registerSize;
     private final int selectorSize;
 
-    Map<String, ShiftRegister> RB;
+    Map<String, ShiftRegister> RB; // lazy register bank, null if the registers are saved in the long array
+
+    private final long[] registers; // register values indexed by selector value, null for the lazy register bank
+    private final int[] generations; // generation which initialized each register, zero if it is not initialized
+    private int generation = 1;
+    private long allocations; // registers which are initialized, it is not reset by clear
+    private final long insertMask; // the first (most significant) bit of a register
 
     /**
      * @param selectorSize number of bits which is needed for selecting a register from register bank
@@ -35,7 +56,89 @@ public class RegisterBank implements Monitorable {
     public RegisterBank(int selectorSize, int registerSize) {
         this.registerSize = registerSize;
         this.selectorSize = selectorSize;
-        RB = new TreeMap<>();
+        this.insertMask = registerSize == 0 ? 0L : 1L << (registerSize - 1);
+        if (selectorSize <= MAX_DENSE_SELECTOR_BITS && registerSize <= Long.SIZE) {
+            registers = new long[1 << selectorSize];
+            generations = new int[1 << selectorSize];
+        } else {
+            RB = new TreeMap<>();
+            registers = null;
+            generations = null;
+        }
+    }
+
+    /**
+     * read the value of a register without copying it into a shift register. If the selector is not associated
+     * with any register then a new register will be initialized.
+     *
+     * @param selector the selector bits as a number, the first selector bit is the MSB
+     * @return the register bits as a number, the first register bit is the MSB
+     */
+    public long readBits(long selector) {
+        if (registers == null) return lazyRegister(selector).readVector().toLong();
+
+        int index = (int) selector;
+        if (generations[index] != generation) initialize(index);
+        return registers[index];
+    }
+
+    /**
+     * insert a bit into a register in place, as same as the shift register insert.
+     * If the selector is not associated with any register then a new register will be initialized.
+     *
+     * @param selector the selector bits as a number, the first selector bit is the MSB
+     * @param bit      the bit which is inserted at the beginning of the register
+     */
+    public void shiftIn(long selector, boolean bit) {
+        if (registers == null) {
+            lazyRegister(selector).insert(Bit.of(bit));
+            return;
+        }
+
+        int index = (int) selector;
+        if (generations[index] != generation) initialize(index);
+        registers[index] = (registers[index] >>> 1) | (bit ? insertMask : 0L);
+    }
+
+    /**
+     * write the value on a specific register without building a bit array.
+     *
+     * @param selector the selector bits as a number, the first selector bit is the MSB
+     * @param value    the register bits as a number, the first register bit is the MSB
+     */
+    public void writeBits(long selector, long value) {
+        if (registers == null) {
+            lazyRegister(selector).load(BitVector.of(value, registerSize));
+            return;
+        }
+
+        int index = (int) selector;
+        if (generations[index] != generation) initialize(index);
+        registers[index] = value;
+    }
+
+    private void initialize(int index) {
+        generations[index] = generation;
+        registers[index] = 0;
+        allocations++;
+    }
+
+    /**
+     * @return number of bits of each register
+     */
+    public int getRegisterSize() {
+        return registerSize;
+    }
+
+    private ShiftRegister lazyRegister(long selector) {
+        String selectorToString = BitVector.of(selector, selectorSize).toString();
+        ShiftRegister register = RB.get(selectorToString);
+        if (register == null) {
+            register = new SIPORegister("r", registerSize, null);
+            RB.put(selectorToString, register);
+            allocations++;
+        }
+        return register;
     }
 
     /**
@@ -51,11 +154,18 @@ public class RegisterBank implements Monitorable {
         if (selector.length != selectorSize)
             throw new IllegalArgumentException("register bank selector is not valid");
 
+        if (registers != null) {
+            ShiftRegister register = new SIPORegister("r", registerSize, null);
+            register.load(BitVector.of(readBits(BitVector.toLong(selector)), registerSize));
+            return register;
+        }
+
         String selectorToString = Bit.arrayToString(selector);
         if (!RB.containsKey(selectorToString)) {
             Bit[] defaultBlock = new Bit[registerSize];
             Arrays.fill(defaultBlock, Bit.ZERO);
             RB.put(selectorToString, new SIPORegister("r", registerSize, defaultBlock));
+            allocations++;
 
         }
         return new SIPORegister("r", registerSize, RB.get(selectorToString).read());
@@ -77,12 +187,100 @@ public class RegisterBank implements Monitorable {
         if (registerValue.length != this.registerSize)
             throw new IllegalArgumentException("registerValue size is not as same as register size");
 
+        if (registers != null) {
+            writeBits(BitVector.toLong(selector), BitVector.toLong(registerValue));
+            return;
+        }
+
         String selectorToString = Bit.arrayToString(selector);
         if (RB.containsKey(selectorToString)) {
             ShiftRegister correspondingRegister = RB.get(selectorToString);
             correspondingRegister.load(registerValue);
         } else {
             RB.put(selectorToString, new SIPORegister("r", registerSize, registerValue));
+            allocations++;
+        }
+    }
+
+    /**
+     * drops all the registers in constant time, the registers are initialized again with zero when they are used.
+     */
+    public void clear() {
+        if (registers == null) {
+            RB.clear();
+            return;
+        }
+        if (generation == Integer.MAX_VALUE) {
+            // the generation wraps around once in 2^31 clears
+            Arrays.fill(generations, 0);
+            generation = 0;
+        }
+        generation++;
+    }
+
+    @Override
+    public long getOccupancy() {
+        if (registers == null) return RB.size();
+        long occupied = 0;
+        for (int g : generations) {
+            if (g == generation) occupied++;
+        }
+        return occupied;
+    }
+
+    @Override
+    public long getCapacity() {
+        return selectorSize >= Long.SIZE - 1 ? Long.MAX_VALUE : 1L << selectorSize;
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * the long array is written as it is, the lazy register bank writes each initialized register after its selector
+     */
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(selectorSize);
+        out.writeLong(registerSize);
+        out.writeLong(allocations);
+        if (registers != null) {
+            long[] initialized = new long[(generations.length + Long.SIZE - 1) / Long.SIZE];
+            for (int index = 0; index < generations.length; index++) {
+                if (generations[index] == generation) initialized[index >>> 6] |= 1L << index;
+            }
+            out.writeLongs(initialized);
+            out.writeLongs(registers);
+            return;
+        }
+        out.writeInt(RB.size());
+        for (Map.Entry<String, ShiftRegister> register : RB.entrySet()) {
+            out.writeString(register.getKey());
+            out.writeBits(register.getValue().read());
+        }
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(selectorSize, "selector size");
+        in.expect(registerSize, "register size");
+        allocations = in.readLong();
+        if (registers != null) {
+            long[] initialized = new long[(generations.length + Long.SIZE - 1) / Long.SIZE];
+            in.readLongs(initialized);
+            generation = 1;
+            for (int index = 0; index < generations.length; index++) {
+                generations[index] = (initialized[index >>> 6] & (1L << index)) != 0 ? generation : 0;
+            }
+            in.readLongs(registers);
+            return;
+        }
+        RB.clear();
+        for (int n = in.readInt(); n > 0; n--) {
+            String selector = in.readString();
+            RB.put(selector, new SIPORegister("r", registerSize, in.readBits(registerSize)));
         }
     }
 
@@ -93,19 +291,29 @@ public class RegisterBank implements Monitorable {
         sb.append(String.format("| %-19s | %-10s |\n", "Register Number", "Value"));
         sb.append("|---------------------|------------|\n");
 
-        for (Map.Entry<String, ShiftRegister> entry : RB.entrySet()) {
-            String regNumber = entry.getKey();
-            Bit[] block = entry.getValue().read();
-            if (regNumber.length() > 16) {
-                String address16 = regNumber.substring(0, 16);
-                sb.append(String.format("| %-16s... | %-10s |\n", address16, Bit.arrayToString(block)));
-            } else {
-                sb.append(String.format("| %-19s | %-10s |\n", regNumber, Bit.arrayToString(block)));
+        if (registers != null) {
+            for (int index = 0; index < registers.length; index++) {
+                if (generations[index] != generation) continue;
+                appendRow(sb, BitVector.of(index, selectorSize).toString(),
+                        BitVector.of(registers[index], registerSize).toString());
             }
-            sb.append("+----------------------------------+\n");
+            return sb.toString();
+        }
 
+        for (Map.Entry<String, ShiftRegister> entry : RB.entrySet()) {
+            appendRow(sb, entry.getKey(), Bit.arrayToString(entry.getValue().read()));
         }
 
         return sb.toString();
     }
+
+    private static void appendRow(StringBuilder sb, String regNumber, String block) {
+        if (regNumber.length() > 16) {
+            String address16 = regNumber.substring(0, 16);
+            sb.append(String.format("| %-16s... | %-10s |\n", address16, block));
+        } else {
+            sb.append(String.format("| %-19s | %-10s |\n", regNumber, block));
+        }
+        sb.append("+----------------------------------+\n");
+    }
 }
@@ -20,12 +20,17 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.MutableBitVector;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 
 public class SIPORegister implements ShiftRegister {
-    private final Bit[] register;
+    private final MutableBitVector register; // packed register bits, the first bit is the MSB
     private final int size;
     public final String name;
 
@@ -40,19 +45,31 @@ public class SIPORegister implements ShiftRegister {
     public SIPORegister(String name, int size, Bit[] defaultValue) {
         this.name = name;
         this.size = size;
-        this.register = new Bit[size];
-        if (defaultValue == null) {
-            // fill all the register with zero values
-            clear();
-        } else {
+        this.register = new MutableBitVector(size);
+        if (defaultValue != null) {
             // fill all the register with default value
-            System.arraycopy(Arrays.copyOf(defaultValue, size), 0, this.register, 0, size);
+            register.load(Arrays.copyOf(defaultValue, size));
         }
     }
 
     @Override
     public Bit[] read() {
-        return Arrays.copyOf(register, size);
+        return register.toBits();
+    }
+
+    @Override
+    public BitVector readVector() {
+        return register.toBitVector();
+    }
+
+    @Override
+    public long readBits() {
+        return register.toLong();
+    }
+
+    @Override
+    public void loadBits(long bits) {
+        register.load(bits);
     }
 
     /**
@@ -62,7 +79,18 @@ public class SIPORegister implements ShiftRegister {
      */
     @Override
     public void load(Bit[] bits) {
-        if (size >= 0) System.arraycopy(bits, 0, register, 0, size);
+        if (bits.length < size) throw new ArrayIndexOutOfBoundsException("not enough bits to load into register");
+        register.load(bits);
+    }
+
+    /**
+     * load data into register
+     *
+     * @param bits data to be load in register, must have the same length as the register
+     */
+    @Override
+    public void load(BitVector bits) {
+        register.load(bits);
     }
 
     /**
@@ -72,18 +100,14 @@ public class SIPORegister implements ShiftRegister {
      * @param bit the Bit enum representing the new bit to be inserted
      */
     public void insert(Bit bit) {
-        // Shift all existing bits to the right by one position
-        for (int i = this.register.length - 1; i > 0; i--) {
-            this.register[i] = this.register[i - 1];
-        }
-
-        // Insert the new bit at the beginning of the register
-        this.register[0] = bit;
+        // Shift all existing bits to the right by one position and
+        // insert the new bit at the beginning of the register
+        register.insert(bit == Bit.ONE);
     }
 
     @Override
     public int getLength() {
-        return register.length;
+        return size;
     }
 
 
@@ -92,9 +116,19 @@ public class SIPORegister implements ShiftRegister {
      */
     @Override
     public void clear() {
-        for (int i = 0; i < this.size; i++) {
-            this.register[i] = Bit.ZERO;
-        }
+        register.clear();
+    }
+
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(size);
+        out.writeBits(register.toBits());
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(size, "register size");
+        register.load(in.readBits(size));
     }
 
     /**
@@ -105,15 +139,15 @@ public class SIPORegister implements ShiftRegister {
      */
     public String monitor() {
         StringBuilder sb = new StringBuilder();
-        int registerWidth = this.register.length * 4; // each bit takes up 3 characters (1 for the border and 2 for the bit value and space)
+        int registerWidth = this.size * 4; // each bit takes up 3 characters (1 for the border and 2 for the bit value and space)
         int labelWidth = name.length(); // add 2 for the borders
         int boxWidth = registerWidth + labelWidth + 2; // add 2 for the borders
         int lastBarIndex = registerWidth + labelWidth;
         String line = String.join("", Collections.nCopies(boxWidth, "-")); // create a line of dashes for the top and bottom borders
         sb.append("+").append(line, 0, lastBarIndex + 2).append("+\n");
         sb.append("|").append(name).append(" ");
-        for (Bit bit : this.register) {
-            sb.append(" | ").append(bit.getValue() ? "1" : "0");
+        for (int i = 0; i < this.size; i++) {
+            sb.append(" | ").append(register.get(i));
         }
         sb.append(" |\n");
         sb.append("+").append(line, 0, lastBarIndex + 2).append("+\n");
@@ -0,0 +1,466 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our bounded set associative cache model
+ * read below assumptions about the set associative cache
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the entry is read as an unsigned number (first bit is the MSB). the last bits of the entry
+ * select the set and the next tagBits bits are saved as the tag of the block. the other bits of
+ * the entry are ignored, so two entries with the same set and partial tag share a block (aliasing).
+ *
+ * 2) each set has nWays blocks. when a new entry is saved in a full set, one of the blocks is evicted
+ * with the replacement policy, so the cache never grows beyond nSets * nWays blocks.
+ *
+ * 3) each block is a counter of at most 8 bits which is packed in a byte array, as same as the flat PHT.
+ *
+ * 4) get, setDefault and getAndCount are lookups, they are counted as a hit or a miss and mark the block
+ * as used. contains is not a lookup, and a put only counts the eviction if it needs a new block.
+ *
+ * 5) the valid bits are generation tagged, so clear only moves them to the next generation. the replacement
+ * state of a set is only read when all of its blocks are valid, so it is reset when the set gets its first block.
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.ReplacementPolicy;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+
+import java.io.IOException;
+
+public class SetAssociativeCache implements IndexedCache {
+    static final int MAX_WAYS = Long.SIZE;
+
+    private final int nSets; // number of sets
+    private final int nWays; // number of blocks in a set
+    private final int setBits; // number of entry bits which select the set
+    private final int tagBits; // number of entry bits which are saved as the tag
+    private final long tagMask;
+    private final int nColumns; // number of bits in a block
+    private final int blockMask; // the nColumns bits of a block
+    private final ReplacementPolicy policy;
+
+    private final byte[] blocks; // packed blocks, indexed by set * nWays + way
+    private final long[] tags;
+    private final long[] valid; // generation bits, one bit per block, set if the block is associated with an entry
+    private long epoch = GenerationBits.FIRST_EPOCH; // current generation, in the high half of a word
+    private final long[] stamps; // last use of each block, only for LRU
+    private final long[] trees; // the pseudo LRU tree of each set, only for PSEUDO_LRU
+    private long clock;
+    private long seed = 0x9E3779B97F4A7C15L;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long allocations; // blocks which are allocated, it is not reset by resetStatistics
+
+    /**
+     * @param nSets    number of sets, must be a power of two
+     * @param nWays    number of blocks in a set, a power of two for PSEUDO_LRU
+     * @param tagBits  number of entry bits above the set bits which are saved as the tag
+     * @param nColumns number of bits in a block
+     * @param policy   the replacement policy of the sets
+     */
+    public SetAssociativeCache(int nSets, int nWays, int tagBits, int nColumns, ReplacementPolicy policy) {
+        if (nSets <= 0 || Integer.bitCount(nSets) != 1)
+            throw new IllegalArgumentException("number of sets must be a power of two");
+        if (nWays <= 0 || nWays > MAX_WAYS)
+            throw new IllegalArgumentException("number of ways must be between 1 and " + MAX_WAYS);
+        if (policy == ReplacementPolicy.PSEUDO_LRU && Integer.bitCount(nWays) != 1)
+            throw new IllegalArgumentException("number of ways must be a power of two for pseudo LRU");
+        if (nColumns <= 0 || nColumns > FlatPageHistoryTable.MAX_COLUMNS)
+            throw new IllegalArgumentException("block size must be between 1 and "
+                    + FlatPageHistoryTable.MAX_COLUMNS + " bits");
+        this.nSets = nSets;
+        this.nWays = nWays;
+        this.setBits = Integer.numberOfTrailingZeros(nSets);
+        if (tagBits < 0 || setBits + tagBits > Long.SIZE)
+            throw new IllegalArgumentException("tag must be between 0 and " + (Long.SIZE - setBits) + " bits");
+        this.tagBits = tagBits;
+        this.tagMask = tagBits == Long.SIZE ? -1L : (1L << tagBits) - 1;
+        this.nColumns = nColumns;
+        this.blockMask = (1 << nColumns) - 1;
+        this.policy = policy;
+
+        int nBlocks = nSets * nWays;
+        this.blocks = new byte[nBlocks];
+        this.tags = new long[nBlocks];
+        this.valid = GenerationBits.create(nBlocks);
+        this.stamps = policy == ReplacementPolicy.LRU ? new long[nBlocks] : null;
+        this.trees = policy == ReplacementPolicy.PSEUDO_LRU ? new long[nSets] : null;
+    }
+
+    /**
+     * @return number of sets
+     */
+    public int getSets() {
+        return nSets;
+    }
+
+    /**
+     * @return number of blocks in a set
+     */
+    public int getWays() {
+        return nWays;
+    }
+
+    @Override
+    public int getColumns() {
+        return nColumns;
+    }
+
+    /**
+     * @return number of lookups which found the entry
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups which did not find the entry
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of valid blocks which are replaced by another entry
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * set the hit, miss and eviction counters to zero
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /**
+     * @return number of storage bits of the cache in hardware: the tag, valid bit and block of each way, plus
+     * the replacement state of each set
+     */
+    public long storageBits() {
+        long replacement;
+        if (policy == ReplacementPolicy.LRU) {
+            replacement = (long) nWays * (Integer.SIZE - Integer.numberOfLeadingZeros(nWays - 1));
+        } else if (policy == ReplacementPolicy.PSEUDO_LRU) {
+            replacement = nWays - 1;
+        } else replacement = 0;
+        return (long) nSets * ((long) nWays * (tagBits + 1 + nColumns) + replacement);
+    }
+
+    /**
+     * @param entry the integer value of the address
+     * @return the block index of the entry, or -1 if the entry is not saved
+     */
+    private int find(long entry) {
+        int base = (int) (entry & (nSets - 1)) * nWays;
+        long tag = (entry >>> setBits) & tagMask;
+        for (int slot = base; slot < base + nWays; slot++) {
+            if (tags[slot] == tag && GenerationBits.get(valid, epoch, slot)) return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * finds the entry, counts the lookup and marks the block as used
+     *
+     * @param entry the integer value of the address
+     * @return the block index of the entry, or -1 if the entry is not saved
+     */
+    private int lookup(long entry) {
+        int slot = find(entry);
+        if (slot < 0) {
+            misses++;
+        } else {
+            hits++;
+            touch(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * saves the entry in an empty block of its set, or in the victim block if the set is full
+     *
+     * @param entry the integer value of the address
+     * @param block the block value of the entry
+     * @return the block index of the entry
+     */
+    private int allocate(long entry, int block) {
+        int set = (int) (entry & (nSets - 1));
+        int base = set * nWays;
+        int slot = -1;
+        for (int way = base; way < base + nWays; way++) {
+            if (!GenerationBits.get(valid, epoch, way)) {
+                slot = way;
+                break;
+            }
+        }
+        if (slot == base && trees != null) {
+            trees[set] = 0; // the tree of an empty set may be left from an older generation
+        } else if (slot < 0) {
+            slot = base + victim(set);
+            evictions++;
+        }
+        tags[slot] = (entry >>> setBits) & tagMask;
+        // the bits above the block size are dropped, as same as the flat PHT
+        blocks[slot] = (byte) (block & blockMask);
+        GenerationBits.set(valid, epoch, slot);
+        touch(slot);
+        allocations++;
+        return slot;
+    }
+
+    /**
+     * @param set the full set
+     * @return the way which is replaced
+     */
+    private int victim(int set) {
+        int base = set * nWays;
+        if (policy == ReplacementPolicy.LRU) {
+            int victim = 0;
+            for (int way = 1; way < nWays; way++) {
+                if (stamps[base + way] < stamps[base + victim]) victim = way;
+            }
+            return victim;
+        } else if (policy == ReplacementPolicy.PSEUDO_LRU) {
+            // follow the tree bits from the root, a set bit points to the right half
+            long tree = trees[set];
+            int node = 1;
+            int way = 0;
+            for (int level = nWays; level > 1; level >>>= 1) {
+                int right = (int) (tree >>> node) & 1;
+                way = (way << 1) | right;
+                node = (node << 1) | right;
+            }
+            return way;
+        } else {
+            // xorshift, the same seed gives the same evictions in each simulation
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) ((seed >>> 1) % nWays);
+        }
+    }
+
+    /**
+     * @param slot the used block
+     */
+    private void touch(int slot) {
+        if (policy == ReplacementPolicy.LRU) {
+            stamps[slot] = ++clock;
+        } else if (policy == ReplacementPolicy.PSEUDO_LRU) {
+            // each node on the path points away from the used way
+            int set = slot / nWays;
+            int way = slot - set * nWays;
+            long tree = trees[set];
+            int node = 1;
+            for (int bit = Integer.numberOfTrailingZeros(nWays) - 1; bit >= 0; bit--) {
+                int right = (way >>> bit) & 1;
+                if (right == 1) tree &= ~(1L << node);
+                else tree |= 1L << node;
+                node = (node << 1) | right;
+            }
+            trees[set] = tree;
+        }
+    }
+
+    @Override
+    public boolean contains(long entry) {
+        return find(entry) >= 0;
+    }
+
+    @Override
+    public int get(long entry) {
+        int slot = lookup(entry);
+        return slot < 0 ? 0 : blocks[slot] & 0xFF;
+    }
+
+    @Override
+    public void put(long entry, int block) {
+        int slot = find(entry);
+        if (slot < 0) {
+            allocate(entry, block);
+        } else {
+            blocks[slot] = (byte) (block & blockMask);
+            touch(slot);
+        }
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultBlock) {
+        int slot = lookup(entry);
+        if (slot < 0) slot = allocate(entry, defaultBlock);
+        return blocks[slot] & 0xFF;
+    }
+
+    @Override
+    public int getAndCount(long entry, int defaultBlock, boolean up, CountMode mode) {
+        int slot = lookup(entry);
+        if (slot < 0) slot = allocate(entry, defaultBlock);
+        return CounterEngine.count(blocks, slot, nColumns, up, mode);
+    }
+
+    /**
+     * Get the value associated with the given key from the cache.
+     *
+     * @param entry the key to look up in the cache
+     * @return a copy of the value associated with the key, or null if the key is not found
+     */
+    @Override
+    public Bit[] get(Bit[] entry) {
+        int slot = lookup(BitVector.toLong(entry));
+        return slot < 0 ? null : BitVector.of(blocks[slot] & 0xFF, nColumns).toBits();
+    }
+
+    /**
+     * Insert a new key-value pair into the cache, a block of the set is evicted if the set is full.
+     *
+     * @param entry the key to insert into the cache
+     * @param value the value to associate with the key
+     * @throws RuntimeException if the length of the block is not equal to nColumns
+     */
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        put(BitVector.toLong(entry), (int) BitVector.toLong(value));
+    }
+
+    /**
+     * put the value in the entry if the entry is not associated to any block.
+     *
+     * @param entry the address which is selected to put the data in it
+     * @param value the data which is saved in address (key) if the key is not mapped to any not-null data
+     */
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        if (!contains(BitVector.toLong(entry))) put(entry, value);
+    }
+
+    /**
+     * Returns the value associated with the given key, or a default value if the key is not found in the cache.
+     * If the key is not found in the cache, the default value is inserted into the cache.
+     *
+     * @param entry        the address to look up in the cache
+     * @param defaultValue the default value to insert into the cache if the key is not found
+     * @return a copy of the value associated with the key
+     */
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+        if (defaultValue.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+        int block = setDefault(BitVector.toLong(entry), (int) BitVector.toLong(defaultValue));
+        return BitVector.of(block, nColumns).toBits();
+    }
+
+    /**
+     * Clear all entries from the cache in constant time, the statistics are not changed. the LRU clock is not
+     * reset, so the blocks of the new generation are always newer than the stale stamps.
+     */
+    @Override
+    public void clear() {
+        epoch = GenerationBits.next(valid, epoch);
+    }
+
+    @Override
+    public long getOccupancy() {
+        return GenerationBits.count(valid, epoch);
+    }
+
+    @Override
+    public long getCapacity() {
+        return (long) nSets * nWays;
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * the blocks, the replacement state and the statistics are written, so a restored cache evicts the same blocks
+     */
+    @Override
+    public void snapshot(SnapshotOutput out) throws IOException {
+        out.writeLong(nSets);
+        out.writeLong(nWays);
+        out.writeLong(tagBits);
+        out.writeLong(nColumns);
+        out.writeLong(policy.ordinal());
+        out.writeBytes(blocks);
+        out.writeLongs(tags);
+        out.writeLong(epoch);
+        out.writeLongs(valid);
+        if (stamps != null) out.writeLongs(stamps);
+        if (trees != null) out.writeLongs(trees);
+        out.writeLong(clock);
+        out.writeLong(seed);
+        out.writeLong(hits);
+        out.writeLong(misses);
+        out.writeLong(evictions);
+        out.writeLong(allocations);
+    }
+
+    @Override
+    public void restore(SnapshotInput in) throws IOException {
+        in.expect(nSets, "number of sets");
+        in.expect(nWays, "number of ways");
+        in.expect(tagBits, "tag size");
+        in.expect(nColumns, "block size");
+        in.expect(policy.ordinal(), "replacement policy");
+        in.readBytes(blocks);
+        in.readLongs(tags);
+        epoch = in.readLong();
+        in.readLongs(valid);
+        if (stamps != null) in.readLongs(stamps);
+        if (trees != null) in.readLongs(trees);
+        clock = in.readLong();
+        seed = in.readLong();
+        hits = in.readLong();
+        misses = in.readLong();
+        evictions = in.readLong();
+        allocations = in.readLong();
+    }
+
+    /**
+     * Returns a string representation of the current state of the cache.
+     *
+     * @return a table with the partial address (tag and set bits) and block data for each valid block
+     */
+    @Override
+    public String monitor() {
+        int addressWidth = Math.max(1, setBits + tagBits);
+        StringBuilder sb = new StringBuilder();
+        sb.append("+----------------------------------+\n");
+        sb.append(String.format("| %-19s | %-10s |\n", "Address", "Block"));
+        sb.append("|---------------------|------------|\n");
+
+        for (int slot = 0; slot < nSets * nWays; slot++) {
+            if (!GenerationBits.get(valid, epoch, slot)) continue;
+            long entry = (tags[slot] << setBits) | (slot / nWays);
+            String address = BitVector.of(entry, addressWidth).toString();
+            String block = BitVector.of(blocks[slot] & 0xFF, nColumns).toString();
+            if (address.length() > 16) {
+                String address16 = address.substring(0, 16);
+                sb.append(String.format("| %-16s... | %-10s |\n", address16, block));
+            } else {
+                sb.append(String.format("| %-19s | %-10s |\n", address, block));
+            }
+            sb.append("+----------------------------------+\n");
+        }
+
+        return sb.toString();
+    }
+}
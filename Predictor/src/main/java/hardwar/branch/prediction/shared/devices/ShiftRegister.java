@@ -2,13 +2,43 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
 import hardwar.branch.prediction.shared.Monitorable;
+import hardwar.branch.prediction.shared.Snapshotable;
 
-public interface ShiftRegister extends Monitorable {
+public interface ShiftRegister extends Monitorable, Snapshotable {
     Bit[] read();
 
+    /**
+     * @return the register bits as a packed vector
+     */
+    default BitVector readVector() {
+        return BitVector.of(read());
+    }
+
     void load(Bit[] bits);
 
+    /**
+     * @param bits the packed data to be loaded in the register
+     */
+    default void load(BitVector bits) {
+        load(bits.toBits());
+    }
+
+    /**
+     * @return the least significant 64 bits of the register as a number, the first bit is the MSB
+     */
+    default long readBits() {
+        return readVector().toLong();
+    }
+
+    /**
+     * @param bits the register value as a number, the first bit of the register is the MSB
+     */
+    default void loadBits(long bits) {
+        load(BitVector.of(bits, getLength()));
+    }
+
     void insert(Bit bit);
 
     int getLength();
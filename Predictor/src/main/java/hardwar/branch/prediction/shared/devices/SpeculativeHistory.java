@@ -0,0 +1,127 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our speculative history model
+ * read below assumptions about pre-defined speculative history
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the history is the wrapped shift register. a speculative prediction shifts the predicted bit in
+ * immediately and saves the register value before the shift as a checkpoint.
+ *
+ * 2) the checkpoints are saved in a ring of longs indexed by a sequence number, the predicted bit is kept in
+ * the highest bit of the checkpoint, so the register must be at most 63 bits.
+ *
+ * 3) the branches are resolved in program order. a mispredicted branch restores its checkpoint with the
+ * actual bit shifted in and squashes every younger checkpoint, both in O(1).
+ *
+ * 4) a folded history register can be hundreds of bits long, so its checkpoint is the bit which the speculative
+ * insert shifted out. a mispredicted branch undoes the inserts of its own and every younger branch, youngest
+ * first, and shifts the actual bit in. the repair is O(1) per squashed branch and the folded values stay exact.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.Monitorable;
+
+public class SpeculativeHistory implements Monitorable {
+    public static final int DEFAULT_CAPACITY = 256;
+    private static final long PREDICTED_BIT = Long.MIN_VALUE;
+
+    private final ShiftRegister history;
+    private final FoldedHistoryRegister folded; // the history if it is folded, otherwise null
+    private final long insertBit; // the first (most significant) bit of the history
+    private final long[] checkpoints;
+    private final int ringMask;
+    private long head; // sequence number of the oldest in-flight branch
+    private long tail; // sequence number of the next branch
+
+    /**
+     * @param history  the history register which is updated speculatively, at most 63 bits unless it is folded
+     * @param capacity the largest number of in-flight branches, it is rounded up to a power of two
+     */
+    public SpeculativeHistory(ShiftRegister history, int capacity) {
+        this.folded = history instanceof FoldedHistoryRegister ? (FoldedHistoryRegister) history : null;
+        if (history.getLength() <= 0 || (folded == null && history.getLength() >= Long.SIZE))
+            throw new IllegalArgumentException("history must be between 1 and 63 bits");
+        if (capacity <= 0 || capacity > 1 << 30) throw new IllegalArgumentException("invalid capacity " + capacity);
+        this.history = history;
+        this.insertBit = folded == null ? 1L << (history.getLength() - 1) : 0L;
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.checkpoints = new long[size];
+        this.ringMask = size - 1;
+    }
+
+    /**
+     * shift the predicted bit into the history and save a checkpoint
+     *
+     * @param predicted the predicted result of branch
+     * @return the sequence number of the branch, it is used to resolve the branch
+     */
+    public long speculate(boolean predicted) {
+        if (tail - head > ringMask) throw new IllegalStateException("too many branches in flight");
+        if (folded != null) {
+            checkpoints[(int) tail & ringMask] = (folded.readLast() ? 1L : 0L) | (predicted ? PREDICTED_BIT : 0L);
+            folded.shiftIn(predicted);
+            return tail++;
+        }
+        checkpoints[(int) tail & ringMask] = history.readBits() | (predicted ? PREDICTED_BIT : 0L);
+        history.insert(Bit.of(predicted));
+        return tail++;
+    }
+
+    /**
+     * resolve the oldest in-flight branch. if it is mispredicted, the history is repaired and the younger
+     * branches are squashed, they must be predicted again.
+     *
+     * @param sequence the sequence number which speculate returned
+     * @param taken    the actual result of branch
+     * @return true if the branch was mispredicted
+     */
+    public boolean resolve(long sequence, boolean taken) {
+        if (sequence != head || head == tail)
+            throw new IllegalStateException("branch " + sequence + " is not the oldest in-flight branch");
+        long checkpoint = checkpoints[(int) sequence & ringMask];
+        head++;
+        boolean predicted = checkpoint < 0;
+        if (predicted == taken) return false;
+        if (folded != null) {
+            // undo the inserts of the squashed branches and of this branch, youngest first
+            for (long undone = tail - 1; undone >= sequence; undone--) {
+                folded.unshift((checkpoints[(int) undone & ringMask] & 1L) != 0);
+            }
+            folded.shiftIn(taken);
+        } else {
+            long before = checkpoint & ~PREDICTED_BIT;
+            history.loadBits((before >>> 1) | (taken ? insertBit : 0L));
+        }
+        tail = head;
+        return true;
+    }
+
+    /**
+     * @return number of branches which are predicted and not resolved yet
+     */
+    public int inFlight() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return largest number of in-flight branches
+     */
+    public int capacity() {
+        return checkpoints.length;
+    }
+
+    /**
+     * drop every in-flight branch and keep the history as it is
+     */
+    public void clear() {
+        head = tail;
+    }
+
+    @Override
+    public String monitor() {
+        return "Speculative history: " + inFlight() + " in flight of " + capacity() + "\n" + history.monitor();
+    }
+}
@@ -0,0 +1,202 @@
+package hardwar.branch.prediction.simulator;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the compact {@link TraceFormat} layout through memory mapped windows. The window always holds whole
+ * blocks, the records are decoded in place with absolute reads and no object is built per record.
+ */
+public class CompactTraceReader implements TraceReader {
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 26; // 64MB windows
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long recordCount;
+    private final long instructionCount;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart = TraceFormat.HEADER_SIZE; // file position of the window
+    private int windowLength;
+    private int blockEnd; // window offset after the current block
+    private int outcomeOffset; // window offset of the outcome bits of the current block
+    private int position; // window offset of the next varint
+    private int blockRemaining; // records left in the current block
+    private int blockIndex; // index of the current record in the block
+    private long read; // number of records read
+
+    private long pc;
+    private long target;
+    private int opcode;
+    private boolean taken;
+
+    public CompactTraceReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param path       the trace file
+     * @param windowSize number of bytes which are mapped at once, it grows if a block does not fit
+     * @throws IOException if the file can not be opened or it is not a compact trace
+     */
+    public CompactTraceReader(Path path, int windowSize) throws IOException {
+        if (windowSize < TraceFormat.BLOCK_HEADER_SIZE)
+            throw new IllegalArgumentException("window must hold a block header");
+        this.path = path;
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            if (fileSize < TraceFormat.HEADER_SIZE) throw new IOException(path + " is not a branch trace");
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceFormat.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(TraceFormat.MAGIC_OFFSET) != TraceFormat.COMPACT_MAGIC)
+                throw new IOException(path + " is not a compact branch trace");
+            if (header.getInt(TraceFormat.VERSION_OFFSET) != TraceFormat.VERSION)
+                throw new IOException("unsupported trace version " + header.getInt(TraceFormat.VERSION_OFFSET));
+            this.recordCount = header.getLong(TraceFormat.RECORD_COUNT_OFFSET);
+            this.instructionCount = header.getLong(TraceFormat.INSTRUCTION_COUNT_OFFSET);
+            if (recordCount < 0) throw new IOException(path + " has a negative record count");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (read >= recordCount) return false;
+        if (blockRemaining == 0) nextBlock();
+        MappedByteBuffer buffer = window;
+        pc += TraceFormat.unzigzag(readVarint(buffer));
+        target = pc + TraceFormat.unzigzag(readVarint(buffer));
+        opcode = (int) readVarint(buffer);
+        taken = (buffer.get(outcomeOffset + (blockIndex >>> 3)) & (1 << (blockIndex & 7))) != 0;
+        blockIndex++;
+        blockRemaining--;
+        read++;
+        return true;
+    }
+
+    /**
+     * decodes a block at a time with the cursor state kept in locals
+     */
+    @Override
+    public int read(long[] pcs, boolean[] outcomes) throws IOException {
+        int n = (int) Math.min(Math.min(pcs.length, outcomes.length), recordCount - read);
+        int i = 0;
+        while (i < n) {
+            if (blockRemaining == 0) nextBlock();
+            MappedByteBuffer buffer = window;
+            int count = Math.min(n - i, blockRemaining);
+            long current = pc;
+            long offset = 0;
+            long code = 0;
+            for (int end = i + count; i < end; i++, blockIndex++) {
+                current += TraceFormat.unzigzag(readVarint(buffer));
+                offset = readVarint(buffer);
+                code = readVarint(buffer);
+                pcs[i] = current;
+                outcomes[i] = (buffer.get(outcomeOffset + (blockIndex >>> 3)) & (1 << (blockIndex & 7))) != 0;
+            }
+            // the cursor fields describe the last record read
+            pc = current;
+            target = current + TraceFormat.unzigzag(offset);
+            opcode = (int) code;
+            taken = outcomes[i - 1];
+            blockRemaining -= count;
+            read += count;
+        }
+        return n;
+    }
+
+    private void nextBlock() throws IOException {
+        if (window != null && blockEnd + TraceFormat.BLOCK_HEADER_SIZE <= windowLength) {
+            int size = window.getInt(blockEnd + 4);
+            if (blockEnd + TraceFormat.BLOCK_HEADER_SIZE + (long) size <= windowLength) {
+                startBlock(blockEnd);
+                return;
+            }
+        }
+        // map a new window from the start of the block
+        long start = window == null ? TraceFormat.HEADER_SIZE : windowStart + blockEnd;
+        map(start, TraceFormat.BLOCK_HEADER_SIZE);
+        long size = TraceFormat.BLOCK_HEADER_SIZE + (window.getInt(4) & 0xFFFFFFFFL);
+        if (size > windowLength) map(start, size);
+        startBlock(0);
+    }
+
+    private void map(long start, long minimum) throws IOException {
+        long length = Math.min(Math.max(windowSize, minimum), fileSize - start);
+        if (length < minimum || length > Integer.MAX_VALUE) throw new IOException(path + " is truncated");
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = start;
+        windowLength = (int) length;
+    }
+
+    private void startBlock(int offset) throws IOException {
+        int records = window.getInt(offset);
+        if (records <= 0 || records > TraceFormat.BLOCK_RECORDS) throw new IOException(path + " has a broken block");
+        blockRemaining = records;
+        blockIndex = 0;
+        outcomeOffset = offset + TraceFormat.BLOCK_HEADER_SIZE;
+        position = outcomeOffset + (records + Byte.SIZE - 1) / Byte.SIZE;
+        blockEnd = outcomeOffset + window.getInt(offset + 4);
+        pc = 0;
+    }
+
+    private long readVarint(MappedByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    @Override
+    public long pc() {
+        return pc;
+    }
+
+    @Override
+    public long target() {
+        return target;
+    }
+
+    @Override
+    public int opcode() {
+        return opcode;
+    }
+
+    @Override
+    public boolean taken() {
+        return taken;
+    }
+
+    @Override
+    public long recordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public long instructionCount() {
+        return instructionCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,104 @@
+package hardwar.branch.prediction.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes the compact {@link TraceFormat} layout. A block of records is collected in arrays and encoded into a
+ * direct buffer when it is full.
+ */
+public class CompactTraceWriter implements TraceOutput {
+    // outcome bits and three varints of at most 10 bytes per record
+    private static final int MAX_PAYLOAD = TraceFormat.BLOCK_RECORDS / Byte.SIZE + TraceFormat.BLOCK_RECORDS * 30;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long[] pcs = new long[TraceFormat.BLOCK_RECORDS];
+    private final long[] targets = new long[TraceFormat.BLOCK_RECORDS];
+    private final int[] opcodes = new int[TraceFormat.BLOCK_RECORDS];
+    private final byte[] outcomes = new byte[TraceFormat.BLOCK_RECORDS / Byte.SIZE];
+    private int blockSize; // number of records in the current block
+    private long recordCount;
+    private long instructionCount;
+
+    public CompactTraceWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(TraceFormat.BLOCK_HEADER_SIZE + MAX_PAYLOAD)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        // the header is written on close
+        channel.position(TraceFormat.HEADER_SIZE);
+    }
+
+    @Override
+    public void write(long pc, long target, int opcode, boolean taken) throws IOException {
+        pcs[blockSize] = pc;
+        targets[blockSize] = target;
+        opcodes[blockSize] = opcode;
+        if (taken) outcomes[blockSize >>> 3] |= 1 << (blockSize & 7);
+        blockSize++;
+        recordCount++;
+        if (blockSize == TraceFormat.BLOCK_RECORDS) flush();
+    }
+
+    @Override
+    public void setInstructionCount(long instructionCount) {
+        this.instructionCount = instructionCount;
+    }
+
+    @Override
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    private void flush() throws IOException {
+        if (blockSize == 0) return;
+        buffer.clear();
+        buffer.position(TraceFormat.BLOCK_HEADER_SIZE);
+        buffer.put(outcomes, 0, (blockSize + Byte.SIZE - 1) / Byte.SIZE);
+        long previous = 0;
+        for (int i = 0; i < blockSize; i++) {
+            putVarint(TraceFormat.zigzag(pcs[i] - previous));
+            putVarint(TraceFormat.zigzag(targets[i] - pcs[i]));
+            putVarint(opcodes[i] & 0xFFFFFFFFL);
+            previous = pcs[i];
+        }
+        buffer.putInt(0, blockSize);
+        buffer.putInt(4, buffer.position() - TraceFormat.BLOCK_HEADER_SIZE);
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        Arrays.fill(outcomes, (byte) 0);
+        blockSize = 0;
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            buffer.clear();
+            buffer.putInt(TraceFormat.COMPACT_MAGIC);
+            buffer.putInt(TraceFormat.VERSION);
+            buffer.putLong(recordCount);
+            buffer.putLong(instructionCount);
+            buffer.putLong(0L);
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) position += channel.write(buffer, position);
+        } finally {
+            channel.close();
+        }
+    }
+}
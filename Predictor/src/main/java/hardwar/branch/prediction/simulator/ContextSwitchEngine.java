@@ -0,0 +1,263 @@
+package hardwar.branch.prediction.simulator;
+
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+ * time sliced simulation of several programs on one predictor
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) every trace is one program (context). the contexts run round robin on the core predictor, each one for
+ *    a quantum of branches, and a context whose trace is finished leaves the rotation.
+ *
+ * 2) the switch policy decides which state a program keeps. the state is saved with the predictor snapshot
+ *    into a memory buffer of the context, so the dense registers and tables are copied as whole arrays and
+ *    the blocks are not inserted again one by one.
+ *
+ * 3) every context also runs on its own isolated predictor which is never switched. the accuracy below the
+ *    isolated run is the accuracy lost to the interference of the other programs and the flushes.
+ *
+ * 4) a program which is switched in for the first time starts from the initial state of the predictor.
+ * -------------------------------------------------------
+ */
+
+public class ContextSwitchEngine {
+    private final int quantum;
+    private final SwitchPolicy policy;
+    private final int chunkSize;
+
+    /**
+     * @param quantum number of branches of a time slice
+     * @param policy  the state which is saved and restored on a switch
+     */
+    public ContextSwitchEngine(int quantum, SwitchPolicy policy) {
+        this(quantum, policy, Simulator.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param quantum   number of branches of a time slice
+     * @param policy    the state which is saved and restored on a switch
+     * @param chunkSize number of branches which are decoded at once for each context
+     */
+    public ContextSwitchEngine(int quantum, SwitchPolicy policy, int chunkSize) {
+        if (quantum <= 0) throw new IllegalArgumentException("quantum must be positive");
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.quantum = quantum;
+        this.policy = policy;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * interleave the traces on one predictor until all of them are finished
+     *
+     * @param factory creates the core predictor and the isolated predictor of every context, all with the
+     *                same configuration
+     * @param traces  the trace readers by context name, they are not closed
+     * @return statistics of each context in the order of the map
+     * @throws IOException if a trace can not be read
+     */
+    public List<ContextSwitchResult> run(Supplier<BranchPredictor> factory, Map<String, TraceReader> traces)
+            throws IOException {
+        BranchPredictor core = factory.get();
+        State initial = new State();
+        if (policy != SwitchPolicy.SHARED) initial.save(core, policy != SwitchPolicy.SWAP_HISTORY);
+
+        List<Context> contexts = new ArrayList<>(traces.size());
+        for (Map.Entry<String, TraceReader> entry : traces.entrySet()) {
+            contexts.add(new Context(entry.getKey(), entry.getValue(), factory.get(), chunkSize));
+        }
+
+        List<Context> active = new ArrayList<>(contexts);
+        Context running = null;
+        while (!active.isEmpty()) {
+            for (Iterator<Context> it = active.iterator(); it.hasNext(); ) {
+                Context context = it.next();
+                if (running != null && running != context) switchTo(core, running, context, initial);
+                running = context;
+                if (!context.run(core, quantum)) {
+                    context.finished = true;
+                    it.remove();
+                }
+            }
+        }
+
+        List<ContextSwitchResult> results = new ArrayList<>(contexts.size());
+        for (Context context : contexts) {
+            results.add(new ContextSwitchResult(context.name, context.branches, context.mispredictions,
+                    context.isolatedMispredictions, context.switches, context.switchNanos));
+        }
+        return results;
+    }
+
+    private void switchTo(BranchPredictor core, Context from, Context to, State initial) throws IOException {
+        long start = System.nanoTime();
+        switch (policy) {
+            case FLUSH:
+                initial.restore(core);
+                break;
+            case SWAP_HISTORY:
+            case SWAP_ALL:
+                if (!from.finished) from.state.save(core, policy == SwitchPolicy.SWAP_ALL);
+                (to.state.saved ? to.state : initial).restore(core);
+                break;
+            default:
+                break;
+        }
+        to.switches++;
+        to.switchNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * usage: ContextSwitchEngine predictor quantum policy trace-file...
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("usage: ContextSwitchEngine <predictor> <quantum> <SHARED|FLUSH|SWAP_HISTORY|SWAP_ALL> "
+                    + "<trace-file>...");
+            System.exit(2);
+        }
+        String name = args[0];
+        ContextSwitchEngine engine = new ContextSwitchEngine(Integer.parseInt(args[1]),
+                SwitchPolicy.valueOf(args[2]));
+        Map<String, TraceReader> traces = new LinkedHashMap<>();
+        try {
+            for (int i = 3; i < args.length; i++) {
+                Path path = Paths.get(args[i]);
+                traces.put(path.getFileName() + "#" + (i - 3), TraceFormat.open(path));
+            }
+            System.out.print(ContextSwitchResult.table(engine.run(() -> Simulator.predictorOf(name), traces)));
+        } finally {
+            for (TraceReader trace : traces.values()) trace.close();
+        }
+    }
+
+    /**
+     * one program: its trace, the decoded branches which are not simulated yet and its saved state
+     */
+    private static final class Context {
+        final String name;
+        final TraceReader trace;
+        final BranchPredictor isolated;
+        final State state = new State();
+        final long[] pcs;
+        final boolean[] outcomes;
+        int position;
+        int size;
+        boolean finished;
+        long branches;
+        long mispredictions;
+        long isolatedMispredictions;
+        long switches;
+        long switchNanos;
+
+        Context(String name, TraceReader trace, BranchPredictor isolated, int chunkSize) {
+            this.name = name;
+            this.trace = trace;
+            this.isolated = isolated;
+            this.pcs = new long[chunkSize];
+            this.outcomes = new boolean[chunkSize];
+        }
+
+        /**
+         * @return false if the trace is finished
+         */
+        boolean run(BranchPredictor core, int quantum) throws IOException {
+            for (int left = quantum; left > 0; ) {
+                if (!fill()) return false;
+                int to = position + Math.min(left, size - position);
+                mispredictions += core.simulate(pcs, outcomes, position, to, null);
+                isolatedMispredictions += isolated.simulate(pcs, outcomes, position, to, null);
+                branches += to - position;
+                left -= to - position;
+                position = to;
+            }
+            // a trace which ends with the quantum does not cost another switch
+            return fill();
+        }
+
+        private boolean fill() throws IOException {
+            if (position < size) return true;
+            size = trace.read(pcs, outcomes);
+            position = 0;
+            return size > 0;
+        }
+    }
+
+    /**
+     * the saved state of a context, a memory channel which is written by the snapshot and read back from
+     * its beginning. the snapshot input and output are kept, so a switch does not allocate their buffers.
+     */
+    private static final class State implements ReadableByteChannel, WritableByteChannel {
+        private ByteBuffer bytes = ByteBuffer.allocate(1 << 12);
+        private final SnapshotOutput out = new SnapshotOutput(this);
+        private final SnapshotInput in = new SnapshotInput(this);
+        boolean saved;
+        private boolean tables;
+
+        /**
+         * @param tables if false only the history registers are saved
+         */
+        void save(BranchPredictor predictor, boolean tables) throws IOException {
+            bytes.clear();
+            if (tables) predictor.snapshot(out);
+            else predictor.saveContext(out);
+            out.flush();
+            bytes.flip();
+            this.tables = tables;
+            saved = true;
+        }
+
+        void restore(BranchPredictor predictor) throws IOException {
+            bytes.rewind();
+            if (tables) predictor.restore(in);
+            else predictor.restoreContext(in);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            if (bytes.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + length));
+                bytes.flip();
+                larger.put(bytes);
+                bytes = larger;
+            }
+            bytes.put(src);
+            return length;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!bytes.hasRemaining()) return -1;
+            int length = Math.min(dst.remaining(), bytes.remaining());
+            ByteBuffer slice = bytes.duplicate();
+            slice.limit(slice.position() + length);
+            dst.put(slice);
+            bytes.position(bytes.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package hardwar.branch.prediction.simulator;
+
+import java.util.List;
+
+/**
+ * The statistics of one program of a context switch simulation, next to the same program on its own predictor.
+ */
+public class ContextSwitchResult {
+    private final String context;
+    private final long branches;
+    private final long mispredictions;
+    private final long isolatedMispredictions;
+    private final long switches;
+    private final long switchNanos;
+
+    /**
+     * @param context                name of the program
+     * @param branches               number of simulated branches
+     * @param mispredictions         number of mispredicted branches on the time sliced predictor
+     * @param isolatedMispredictions number of mispredicted branches on the isolated predictor
+     * @param switches               number of times the program is switched in
+     * @param switchNanos            time of saving and restoring the predictor state for the program
+     */
+    public ContextSwitchResult(String context, long branches, long mispredictions, long isolatedMispredictions,
+                               long switches, long switchNanos) {
+        this.context = context;
+        this.branches = branches;
+        this.mispredictions = mispredictions;
+        this.isolatedMispredictions = isolatedMispredictions;
+        this.switches = switches;
+        this.switchNanos = switchNanos;
+    }
+
+    public String getContext() {
+        return context;
+    }
+
+    public long getBranches() {
+        return branches;
+    }
+
+    public long getMispredictions() {
+        return mispredictions;
+    }
+
+    public long getIsolatedMispredictions() {
+        return isolatedMispredictions;
+    }
+
+    public long getSwitches() {
+        return switches;
+    }
+
+    public long getSwitchNanos() {
+        return switchNanos;
+    }
+
+    /**
+     * @return fraction of the branches which are predicted correctly on the time sliced predictor
+     */
+    public double accuracy() {
+        return branches == 0 ? 0 : 1.0 - (double) mispredictions / branches;
+    }
+
+    /**
+     * @return fraction of the branches which are predicted correctly on the isolated predictor
+     */
+    public double isolatedAccuracy() {
+        return branches == 0 ? 0 : 1.0 - (double) isolatedMispredictions / branches;
+    }
+
+    /**
+     * @return the accuracy which is lost to the interference of the other programs and the flushes,
+     * negative if the program gains from the shared state
+     */
+    public double lostAccuracy() {
+        return isolatedAccuracy() - accuracy();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: branches=%d, mispredictions=%d, isolated=%d, lost accuracy=%.4f%%, switches=%d",
+                context, branches, mispredictions, isolatedMispredictions, lostAccuracy() * 100, switches);
+    }
+
+    /**
+     * @param results the results of one simulation
+     * @return the results as a text table, one row per program and a total row
+     */
+    public static String table(List<ContextSwitchResult> results) {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-20s %14s %14s %10s %10s %10s %10s %12s%n", "context", "branches",
+                "mispredicted", "accuracy", "isolated", "lost", "switches", "switch ms"));
+        long branches = 0, mispredictions = 0, isolated = 0, switches = 0, nanos = 0;
+        for (ContextSwitchResult result : results) {
+            appendRow(table, result);
+            branches += result.branches;
+            mispredictions += result.mispredictions;
+            isolated += result.isolatedMispredictions;
+            switches += result.switches;
+            nanos += result.switchNanos;
+        }
+        appendRow(table, new ContextSwitchResult("total", branches, mispredictions, isolated, switches, nanos));
+        return table.toString();
+    }
+
+    private static void appendRow(StringBuilder table, ContextSwitchResult result) {
+        table.append(String.format("%-20s %14d %14d %9.4f%% %9.4f%% %9.4f%% %10d %12.3f%n", result.context,
+                result.branches, result.mispredictions, result.accuracy() * 100, result.isolatedAccuracy() * 100,
+                result.lostAccuracy() * 100, result.switches, result.switchNanos / 1e6));
+    }
+}
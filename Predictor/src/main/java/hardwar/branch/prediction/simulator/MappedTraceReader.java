@@ -0,0 +1,140 @@
+package hardwar.branch.prediction.simulator;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a {@link TraceFormat} file through memory mapped windows. Only one window is mapped at a time, so the
+ * trace can be bigger than the heap and than the 2GB limit of a single mapping.
+ */
+public class MappedTraceReader implements TraceReader {
+    public static final int DEFAULT_WINDOW_RECORDS = 1 << 22; // 96MB windows
+
+    private final FileChannel channel;
+    private final long recordCount;
+    private final long instructionCount;
+    private final int windowRecords;
+
+    private MappedByteBuffer window;
+    private long windowStart; // index of the first record of the window
+    private int windowSize; // number of records in the window
+    private long current = -1; // index of the current record
+    private int offset; // offset of the current record in the window
+
+    public MappedTraceReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_RECORDS);
+    }
+
+    /**
+     * @param path          the trace file
+     * @param windowRecords number of records which are mapped at once
+     * @throws IOException if the file can not be opened or it is not a trace
+     */
+    public MappedTraceReader(Path path, int windowRecords) throws IOException {
+        if (windowRecords <= 0 || (long) windowRecords * TraceFormat.RECORD_SIZE > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("window must hold between 1 and 2GB of records");
+        this.windowRecords = windowRecords;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() < TraceFormat.HEADER_SIZE) throw new IOException(path + " is not a branch trace");
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceFormat.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(TraceFormat.MAGIC_OFFSET) != TraceFormat.MAGIC)
+                throw new IOException(path + " is not a branch trace");
+            if (header.getInt(TraceFormat.VERSION_OFFSET) != TraceFormat.VERSION)
+                throw new IOException("unsupported trace version " + header.getInt(TraceFormat.VERSION_OFFSET));
+            this.recordCount = header.getLong(TraceFormat.RECORD_COUNT_OFFSET);
+            this.instructionCount = header.getLong(TraceFormat.INSTRUCTION_COUNT_OFFSET);
+            long expected = TraceFormat.HEADER_SIZE + recordCount * TraceFormat.RECORD_SIZE;
+            if (recordCount < 0 || channel.size() < expected)
+                throw new IOException(path + " is truncated, expected " + expected + " bytes");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (current + 1 >= recordCount) return false;
+        current++;
+        if (current - windowStart >= windowSize || window == null) {
+            map(current);
+        } else {
+            offset += TraceFormat.RECORD_SIZE;
+        }
+        return true;
+    }
+
+    @Override
+    public long pc() {
+        return window.getLong(offset + TraceFormat.PC_OFFSET);
+    }
+
+    @Override
+    public long target() {
+        return window.getLong(offset + TraceFormat.TARGET_OFFSET);
+    }
+
+    @Override
+    public int opcode() {
+        return window.getInt(offset + TraceFormat.OPCODE_OFFSET);
+    }
+
+    @Override
+    public boolean taken() {
+        return (window.getInt(offset + TraceFormat.FLAGS_OFFSET) & TraceFormat.TAKEN_FLAG) != 0;
+    }
+
+    @Override
+    public long recordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public long instructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * reads the records with absolute reads on the window, without going through the cursor per field
+     */
+    @Override
+    public int read(long[] pcs, boolean[] outcomes) throws IOException {
+        int n = (int) Math.min(Math.min(pcs.length, outcomes.length), recordCount - current - 1);
+        int i = 0;
+        while (i < n) {
+            next();
+            // copy what is left of the current window in one loop
+            int count = (int) Math.min(n - i, windowStart + windowSize - current);
+            MappedByteBuffer buffer = window;
+            int position = offset;
+            for (int end = i + count; i < end; i++, position += TraceFormat.RECORD_SIZE) {
+                pcs[i] = buffer.getLong(position + TraceFormat.PC_OFFSET);
+                outcomes[i] = (buffer.getInt(position + TraceFormat.FLAGS_OFFSET) & TraceFormat.TAKEN_FLAG) != 0;
+            }
+            current += count - 1;
+            offset = position - TraceFormat.RECORD_SIZE;
+        }
+        return n;
+    }
+
+    private void map(long record) throws IOException {
+        windowStart = record;
+        windowSize = (int) Math.min(windowRecords, recordCount - record);
+        long position = TraceFormat.HEADER_SIZE + record * TraceFormat.RECORD_SIZE;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) windowSize * TraceFormat.RECORD_SIZE);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        offset = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,176 @@
+package hardwar.branch.prediction.simulator;
+
+import hardwar.branch.prediction.shared.BranchPredictor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several predictors over one trace. Every chunk is decoded once into shared arrays which the predictors
+ * only read, each predictor consumes the chunk on a pool thread while the next chunk is decoded into a second
+ * pair of arrays.
+ */
+public class MultiPredictorEngine implements Closeable {
+    public static final String[] JUDGED_PREDICTORS = {"GAg", "GAp", "GAs", "PAg", "PAp", "PAs", "SAg", "SAp", "SAs"};
+
+    private final ExecutorService pool;
+    private final int chunkSize;
+
+    public MultiPredictorEngine() {
+        this(Runtime.getRuntime().availableProcessors(), Simulator.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param threads   number of pool threads
+     * @param chunkSize number of branches which are decoded at once
+     */
+    public MultiPredictorEngine(int threads, int chunkSize) {
+        if (threads <= 0) throw new IllegalArgumentException("number of threads must be positive");
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * run every predictor over the rest of the trace
+     *
+     * @param predictors the predictors by name, a predictor must not be shared with another run at the same time
+     * @param trace      the trace reader, it is not closed
+     * @return statistics of each predictor in the order of the map
+     * @throws IOException if the trace can not be read
+     */
+    public List<SimulationResult> run(Map<String, BranchPredictor> predictors, TraceReader trace) throws IOException {
+        List<Lane> lanes = new ArrayList<>();
+        for (Map.Entry<String, BranchPredictor> entry : predictors.entrySet()) {
+            lanes.add(new Lane(entry.getKey(), entry.getValue()));
+        }
+
+        Chunk current = new Chunk(chunkSize);
+        Chunk next = new Chunk(chunkSize);
+        long branches = 0;
+        current.load(trace);
+        while (current.size > 0) {
+            List<Future<Void>> running = new ArrayList<>(lanes.size());
+            for (Lane lane : lanes) {
+                lane.chunk = current;
+                running.add(pool.submit(lane));
+            }
+            // decode the next chunk while the predictors are busy with this one
+            next.load(trace);
+            await(running);
+            branches += current.size;
+            Chunk swap = current;
+            current = next;
+            next = swap;
+        }
+
+        List<SimulationResult> results = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes) {
+            results.add(new SimulationResult(lane.name, branches, lane.mispredictions, trace.instructionCount(),
+                    lane.elapsedNanos));
+        }
+        return results;
+    }
+
+    private static void await(List<Future<Void>> running) throws IOException {
+        try {
+            for (Future<Void> future : running) future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("simulation is interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @param names the predictor names, see {@link Simulator#predictorOf}
+     * @return new predictors with the default configuration, by name
+     */
+    public static Map<String, BranchPredictor> predictorsOf(List<String> names) {
+        Map<String, BranchPredictor> predictors = new LinkedHashMap<>();
+        for (String name : names) predictors.put(name, Simulator.predictorOf(name));
+        return predictors;
+    }
+
+    /**
+     * usage: MultiPredictorEngine trace-file [predictor...], all judged predictors are run by default
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: MultiPredictorEngine <trace-file> [predictor...]");
+            System.exit(2);
+        }
+        List<String> names = args.length > 1
+                ? Arrays.asList(args).subList(1, args.length)
+                : Arrays.asList(JUDGED_PREDICTORS);
+        long start = System.nanoTime();
+        try (MultiPredictorEngine engine = new MultiPredictorEngine();
+             TraceReader trace = TraceFormat.open(Paths.get(args[0]))) {
+            System.out.print(SimulationResult.table(engine.run(predictorsOf(names), trace)));
+        }
+        System.out.printf("wall time: %.3f s%n", (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * one decoded chunk of the trace, it is read only while the predictors run over it
+     */
+    private static final class Chunk {
+        final long[] pcs;
+        final boolean[] outcomes;
+        int size;
+
+        Chunk(int capacity) {
+            pcs = new long[capacity];
+            outcomes = new boolean[capacity];
+        }
+
+        void load(TraceReader trace) throws IOException {
+            size = trace.read(pcs, outcomes);
+        }
+    }
+
+    /**
+     * the task of one predictor, only one chunk of a lane runs at a time so the predictor is never shared
+     */
+    private static final class Lane implements Callable<Void> {
+        final String name;
+        final BranchPredictor predictor;
+        Chunk chunk;
+        long mispredictions;
+        long elapsedNanos;
+
+        Lane(String name, BranchPredictor predictor) {
+            this.name = name;
+            this.predictor = predictor;
+        }
+
+        @Override
+        public Void call() {
+            long start = System.nanoTime();
+            mispredictions += predictor.simulate(chunk.pcs, chunk.outcomes, 0, chunk.size, null);
+            elapsedNanos += System.nanoTime() - start;
+            return null;
+        }
+    }
+}
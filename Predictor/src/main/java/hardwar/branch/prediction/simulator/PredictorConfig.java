@@ -0,0 +1,185 @@
+package hardwar.branch.prediction.simulator;
+
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAg.SAg;
+import hardwar.branch.prediction.judged.SAp.SAp;
+import hardwar.branch.prediction.judged.SAs.SAs;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.HashMode;
+
+import java.util.Objects;
+
+/**
+ * One point of the design space: a judged predictor and the arguments of its constructor.
+ * The arguments which the predictor does not take are kept as zero (or null for the hash mode),
+ * so two configurations of the same hardware are equal.
+ */
+public final class PredictorConfig {
+    private final String predictor;
+    private final int BHRSize;
+    private final int SCSize;
+    private final int branchInstructionSize;
+    private final int KSize;
+    private final HashMode hashMode;
+
+    /**
+     * @param predictor             the name of a judged predictor, e.g. GAs
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the saturating counter
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the hashed address
+     * @param hashMode              the hash of the address
+     */
+    public PredictorConfig(String predictor, int BHRSize, int SCSize, int branchInstructionSize, int KSize,
+                           HashMode hashMode) {
+        if (!predictor.matches("[GPS]A[gps]")) throw new IllegalArgumentException("unknown predictor " + predictor);
+        this.predictor = predictor;
+        this.BHRSize = BHRSize;
+        this.SCSize = SCSize;
+        this.branchInstructionSize = usesAddress(predictor) ? branchInstructionSize : 0;
+        this.KSize = usesK(predictor) ? KSize : 0;
+        this.hashMode = predictor.endsWith("s") ? Objects.requireNonNull(hashMode) : null;
+    }
+
+    /**
+     * @return a new predictor with this configuration
+     */
+    public BranchPredictor create() {
+        switch (predictor) {
+            case "GAg":
+                return new GAg(BHRSize, SCSize);
+            case "GAp":
+                return new GAp(BHRSize, SCSize, branchInstructionSize);
+            case "GAs":
+                return new GAs(BHRSize, SCSize, branchInstructionSize, KSize, hashMode);
+            case "PAg":
+                return new PAg(BHRSize, SCSize, branchInstructionSize);
+            case "PAp":
+                return new PAp(BHRSize, SCSize, branchInstructionSize);
+            case "PAs":
+                return new PAs(BHRSize, SCSize, branchInstructionSize, KSize, hashMode);
+            case "SAg":
+                return new SAg(BHRSize, SCSize, branchInstructionSize, KSize);
+            case "SAp":
+                return new SAp(BHRSize, SCSize, branchInstructionSize, KSize);
+            default:
+                return new SAs(BHRSize, SCSize, branchInstructionSize, KSize, hashMode);
+        }
+    }
+
+    /**
+     * the storage of the modelled hardware: the history registers and the counters of every PHT
+     *
+     * @return number of bits
+     */
+    public long storageBits() {
+        long histories;
+        switch (predictor.charAt(0)) {
+            case 'G':
+                histories = 1;
+                break;
+            case 'P':
+                histories = 1L << branchInstructionSize;
+                break;
+            default:
+                histories = 1L << KSize;
+                break;
+        }
+        long tables;
+        switch (predictor.charAt(2)) {
+            case 'g':
+                tables = 1;
+                break;
+            case 'p':
+                tables = 1L << branchInstructionSize;
+                break;
+            default:
+                tables = 1L << KSize;
+                break;
+        }
+        return histories * BHRSize + (tables << BHRSize) * SCSize;
+    }
+
+    /**
+     * @return true if the configuration can be built, the hashed address bits must fit in the instruction
+     */
+    public boolean isValid() {
+        // the counters are packed in bytes and the rows are indexed by an int
+        if (BHRSize <= 0 || BHRSize >= Integer.SIZE - 1 || SCSize <= 0 || SCSize > Byte.SIZE) return false;
+        if (usesAddress(predictor) && (branchInstructionSize <= 0 || branchInstructionSize >= Long.SIZE)) return false;
+        return !usesK(predictor) || (KSize > 0 && KSize <= branchInstructionSize);
+    }
+
+    private static boolean usesAddress(String predictor) {
+        return !predictor.equals("GAg");
+    }
+
+    private static boolean usesK(String predictor) {
+        // the per set histories and the per set tables are selected by the hashed address
+        return predictor.startsWith("S") || predictor.endsWith("s");
+    }
+
+    public String getPredictor() {
+        return predictor;
+    }
+
+    public int getBHRSize() {
+        return BHRSize;
+    }
+
+    public int getSCSize() {
+        return SCSize;
+    }
+
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    public int getKSize() {
+        return KSize;
+    }
+
+    public HashMode getHashMode() {
+        return hashMode;
+    }
+
+    /**
+     * @param key a key which is returned by toString
+     * @return the configuration of the key
+     */
+    public static PredictorConfig parse(String key) {
+        String[] parts = key.split(",");
+        if (parts.length != 6) throw new IllegalArgumentException("invalid configuration " + key);
+        return new PredictorConfig(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                Integer.parseInt(parts[3]), Integer.parseInt(parts[4]),
+                parts[5].equals("-") ? null : HashMode.valueOf(parts[5]));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PredictorConfig)) return false;
+        PredictorConfig that = (PredictorConfig) o;
+        return BHRSize == that.BHRSize && SCSize == that.SCSize && branchInstructionSize == that.branchInstructionSize
+                && KSize == that.KSize && predictor.equals(that.predictor) && hashMode == that.hashMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(predictor, BHRSize, SCSize, branchInstructionSize, KSize, hashMode);
+    }
+
+    /**
+     * @return predictor,BHRSize,SCSize,branchInstructionSize,KSize,hashMode with - for an unused hash mode
+     */
+    @Override
+    public String toString() {
+        return predictor + "," + BHRSize + "," + SCSize + "," + branchInstructionSize + "," + KSize + ","
+                + (hashMode == null ? "-" : hashMode.name());
+    }
+}
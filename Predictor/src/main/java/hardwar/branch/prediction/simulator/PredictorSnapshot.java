@@ -0,0 +1,101 @@
+package hardwar.branch.prediction.simulator;
+
+/*
+ * predictor snapshot file layout
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) every number is little endian, as same as the trace files.
+ *
+ * 2) the file starts with magic (int), version (int) and the class name of the predictor (string), then the
+ *    state of the predictor follows as it is written by BranchPredictor.snapshot.
+ *
+ * 3) the configuration of the predictor is not saved. a snapshot is restored in a predictor of the same class
+ *    which is created with the same configuration, the devices check their sizes on restore.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class PredictorSnapshot {
+    public static final int MAGIC = 0x4E535042; // "BPSN" in little endian
+    public static final int VERSION = 2;
+
+    private PredictorSnapshot() {
+    }
+
+    /**
+     * write the state of the predictor to the file, for warm starting or checkpointing a long run
+     *
+     * @param predictor the predictor
+     * @param path      the snapshot file, it is replaced if it exists
+     * @throws IOException if the file can not be written
+     */
+    public static void save(BranchPredictor predictor, Path path) throws IOException {
+        try (SnapshotOutput out = new SnapshotOutput(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            write(predictor, out);
+        }
+    }
+
+    /**
+     * replace the state of the predictor with the snapshot file
+     *
+     * @param predictor the predictor, created with the configuration of the saved predictor
+     * @param path      the snapshot file
+     * @throws IOException if the file is not a snapshot of this kind of predictor
+     */
+    public static void restore(BranchPredictor predictor, Path path) throws IOException {
+        try (SnapshotInput in = new SnapshotInput(FileChannel.open(path, StandardOpenOption.READ))) {
+            read(predictor, in, path.toString());
+        }
+    }
+
+    /**
+     * copy the state of a predictor into another predictor of the same configuration, so several runs can
+     * continue from one warmed up predictor
+     *
+     * @param from the warmed up predictor
+     * @param to   the predictor which receives the state
+     */
+    public static void copy(BranchPredictor from, BranchPredictor to) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (SnapshotOutput out = new SnapshotOutput(Channels.newChannel(bytes))) {
+                write(from, out);
+            }
+            try (SnapshotInput in = new SnapshotInput(Channels.newChannel(
+                    new ByteArrayInputStream(bytes.toByteArray())))) {
+                read(to, in, "copy");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("predictors have different configurations", e);
+        }
+    }
+
+    private static void write(BranchPredictor predictor, SnapshotOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeString(predictor.getClass().getName());
+        predictor.snapshot(out);
+    }
+
+    private static void read(BranchPredictor predictor, SnapshotInput in, String source) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException(source + " is not a predictor snapshot");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException(source + " has unsupported snapshot version " + version);
+        String type = in.readString();
+        if (!type.equals(predictor.getClass().getName()))
+            throw new IOException(source + " is a snapshot of " + type);
+        predictor.restore(in);
+    }
+}
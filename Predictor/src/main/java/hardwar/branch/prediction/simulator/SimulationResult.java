@@ -0,0 +1,93 @@
+package hardwar.branch.prediction.simulator;
+
+import java.util.List;
+
+/**
+ * The statistics of running a predictor over a trace.
+ */
+public class SimulationResult {
+    private final String predictor;
+    private final long branches;
+    private final long mispredictions;
+    private final long instructions;
+    private final long elapsedNanos;
+
+    /**
+     * @param predictor      name of the predictor
+     * @param branches       number of simulated branches
+     * @param mispredictions number of mispredicted branches
+     * @param instructions   number of executed instructions the trace covers, zero if it is unknown
+     * @param elapsedNanos   the simulation time
+     */
+    public SimulationResult(String predictor, long branches, long mispredictions, long instructions,
+                            long elapsedNanos) {
+        this.predictor = predictor;
+        this.branches = branches;
+        this.mispredictions = mispredictions;
+        this.instructions = instructions;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getPredictor() {
+        return predictor;
+    }
+
+    public long getBranches() {
+        return branches;
+    }
+
+    public long getMispredictions() {
+        return mispredictions;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return fraction of the branches which are predicted correctly
+     */
+    public double accuracy() {
+        return branches == 0 ? 0 : 1.0 - (double) mispredictions / branches;
+    }
+
+    /**
+     * @return mispredictions per thousand instructions, the branch count is used if the instruction count is unknown
+     */
+    public double mpki() {
+        long base = instructions > 0 ? instructions : branches;
+        return base == 0 ? 0 : mispredictions * 1000.0 / base;
+    }
+
+    /**
+     * @return number of simulated branches per second
+     */
+    public double branchesPerSecond() {
+        return elapsedNanos == 0 ? 0 : branches * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: branches=%d, mispredictions=%d, accuracy=%.4f%%, MPKI=%.4f, branches/sec=%.0f",
+                predictor, branches, mispredictions, accuracy() * 100, mpki(), branchesPerSecond());
+    }
+
+    /**
+     * @param results the results of one trace
+     * @return the results as a text table, one row per predictor
+     */
+    public static String table(List<SimulationResult> results) {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-12s %14s %14s %10s %10s %14s%n",
+                "predictor", "branches", "mispredicted", "accuracy", "MPKI", "branches/sec"));
+        for (SimulationResult result : results) {
+            table.append(String.format("%-12s %14d %14d %9.4f%% %10.4f %14.0f%n", result.predictor, result.branches,
+                    result.mispredictions, result.accuracy() * 100, result.mpki(), result.branchesPerSecond()));
+        }
+        return table.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package hardwar.branch.prediction.simulator;
+
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAg.SAg;
+import hardwar.branch.prediction.judged.SAp.SAp;
+import hardwar.branch.prediction.judged.SAs.SAs;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.PredictionHandle;
+import hardwar.branch.prediction.shared.PredictorMetrics;
+import hardwar.branch.prediction.shared.SpeculativePredictor;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Streams a trace into a predictor. The records are decoded chunk by chunk into reused arrays and every chunk is
+ * given to {@link BranchPredictor#simulate}, so the trace is never held on the heap.
+ */
+public class Simulator {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    private final long[] pcs;
+    private final boolean[] outcomes;
+
+    public Simulator() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize number of branches which are decoded before they are given to the predictor
+     */
+    public Simulator(int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.pcs = new long[chunkSize];
+        this.outcomes = new boolean[chunkSize];
+    }
+
+    /**
+     * run the predictor over the rest of the trace
+     *
+     * @param name      the name of predictor in the result
+     * @param predictor the predictor
+     * @param trace     the trace reader, it is not closed
+     * @return statistics of the run
+     * @throws IOException if the trace can not be read
+     */
+    public SimulationResult run(String name, BranchPredictor predictor, TraceReader trace) throws IOException {
+        long branches = 0;
+        long mispredictions = 0;
+        long start = System.nanoTime();
+        int n;
+        while ((n = trace.read(pcs, outcomes)) > 0) {
+            mispredictions += predictor.simulate(pcs, outcomes, 0, n, null);
+            branches += n;
+        }
+        long elapsed = System.nanoTime() - start;
+        return new SimulationResult(name, branches, mispredictions, trace.instructionCount(), elapsed);
+    }
+
+    /**
+     * replay the branches through a pipeline which keeps up to depth speculative predictions in flight. the
+     * oldest branch is resolved when the pipeline is full, a misprediction squashes the younger branches and
+     * they are predicted again with the repaired history. the metrics of the predictor count each branch once,
+     * when it is resolved.
+     *
+     * @param predictor the predictor
+     * @param pcs       the branch instruction addresses as numbers
+     * @param outcomes  the actual results of branches
+     * @param from      the index of the first branch, inclusive
+     * @param to        the index of the last branch, exclusive
+     * @param depth     the largest number of in-flight branches
+     * @return the number of mispredicted branches, a squashed prediction is not counted
+     */
+    public static int simulateSpeculative(SpeculativePredictor predictor, long[] pcs, boolean[] outcomes,
+                                          int from, int to, int depth) {
+        if (depth <= 0) throw new IllegalArgumentException("depth must be positive");
+        PredictionHandle[] handles = new PredictionHandle[depth];
+        for (int i = 0; i < depth; i++) handles[i] = new PredictionHandle();
+        int mispredictions = 0;
+        int next = from; // the next branch to be predicted
+        for (int oldest = from; oldest < to; oldest++) {
+            for (; next < to && next - oldest < depth; next++) {
+                predictor.predictSpeculative(pcs[next], handles[(next - from) % depth]);
+            }
+            if (predictor.resolve(handles[(oldest - from) % depth], outcomes[oldest])) {
+                mispredictions++;
+                next = oldest + 1;
+            }
+        }
+        return mispredictions;
+    }
+
+    /**
+     * @param name the name of a predictor, e.g. GAg
+     * @return a predictor with the default configuration
+     */
+    public static BranchPredictor predictorOf(String name) {
+        switch (name) {
+            case "GAg":
+                return new GAg();
+            case "GAp":
+                return new GAp();
+            case "GAs":
+                return new GAs();
+            case "PAg":
+                return new PAg();
+            case "PAp":
+                return new PAp();
+            case "PAs":
+                return new PAs();
+            case "SAg":
+                return new SAg();
+            case "SAp":
+                return new SAp();
+            case "SAs":
+                return new SAs();
+            default:
+                throw new IllegalArgumentException("unknown predictor " + name);
+        }
+    }
+
+    /**
+     * usage: Simulator trace-file predictor...
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: Simulator <trace-file> <predictor>...");
+            System.exit(2);
+        }
+        Simulator simulator = new Simulator();
+        for (int i = 1; i < args.length; i++) {
+            BranchPredictor predictor = predictorOf(args[i]);
+            // the metrics can be watched over JMX while the trace is running
+            ObjectName metrics = predictor.getMetrics().register(args[i] + "#" + i);
+            try (TraceReader trace = TraceFormat.open(Paths.get(args[0]))) {
+                System.out.println(simulator.run(args[i], predictor, trace));
+            } finally {
+                PredictorMetrics.unregister(metrics);
+            }
+        }
+    }
+}
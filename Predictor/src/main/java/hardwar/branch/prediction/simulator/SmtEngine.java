@@ -0,0 +1,171 @@
+package hardwar.branch.prediction.simulator;
+
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.devices.ConcurrentPageHistoryTable;
+import hardwar.branch.prediction.shared.devices.IndexFunction;
+import hardwar.branch.prediction.shared.devices.IndexFunctions;
+import hardwar.branch.prediction.shared.devices.IndexedCache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/*
+ * simultaneous multithreading simulation of several programs on one prediction table
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) every trace is one hardware thread. each hardware thread has its own predictor, so its history registers
+ *    (the BHR or the PABHR register bank) and SC register are confined to the pool thread which runs it.
+ *
+ * 2) the predictors of all the hardware threads share one concurrent PHT, and the hardware threads run at the
+ *    same time on the pool threads. the interleaving of the table accesses is decided by the java threads, so
+ *    the mispredictions of a run are not deterministic when the threads hit the same rows.
+ *
+ * 3) the predictors run their chunks with simulate, so each branch is one read-modify-write of the table
+ *    (getAndCount), which is atomic unless the table is racy.
+ * -------------------------------------------------------
+ */
+
+public class SmtEngine implements Closeable {
+    private final ExecutorService pool;
+    private final int chunkSize;
+
+    public SmtEngine() {
+        this(Runtime.getRuntime().availableProcessors(), Simulator.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param threads   number of pool threads, the hardware threads beyond it wait for a free pool thread
+     * @param chunkSize number of branches which are decoded at once for each hardware thread
+     */
+    public SmtEngine(int threads, int chunkSize) {
+        if (threads <= 0) throw new IllegalArgumentException("number of threads must be positive");
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * run every trace on its own predictor over the shared table until all of them are finished
+     *
+     * @param factory creates the predictor of a hardware thread on the given table
+     * @param table   the table which is shared by the hardware threads, it must be safe for concurrent use
+     * @param traces  the trace readers by hardware thread name, they are not closed
+     * @return statistics of each hardware thread in the order of the map
+     * @throws IOException if a trace can not be read
+     */
+    public List<SimulationResult> run(Function<IndexedCache, BranchPredictor> factory, IndexedCache table,
+                                      Map<String, TraceReader> traces) throws IOException {
+        List<Future<SimulationResult>> running = new ArrayList<>(traces.size());
+        for (Map.Entry<String, TraceReader> entry : traces.entrySet()) {
+            HardwareThread thread = new HardwareThread(entry.getKey(), factory.apply(table), entry.getValue());
+            running.add(pool.submit(thread));
+        }
+
+        List<SimulationResult> results = new ArrayList<>(running.size());
+        try {
+            for (Future<SimulationResult> future : running) results.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("simulation is interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * @param indexFunction maps the branch address and the history to the table entry
+     * @param BHRSize       the size of the BHR registers
+     * @param SCSize        the size of the saturating counters
+     * @param racy          if true the counters are updated without compare and set
+     * @return a concurrent table with 2^BHRSize rows for each selector of the index function
+     */
+    public static ConcurrentPageHistoryTable tableOf(IndexFunction indexFunction, int BHRSize, int SCSize,
+                                                     boolean racy) {
+        return new ConcurrentPageHistoryTable(1 << (indexFunction.selectorBits() + BHRSize), SCSize, racy);
+    }
+
+    /**
+     * usage: SmtEngine predictor CAS|RACY trace-file..., one hardware thread per trace with the default
+     * GAs or PAs configuration
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: SmtEngine <GAs|PAs> <CAS|RACY> <trace-file>...");
+            System.exit(2);
+        }
+        final int BHRSize = 4, SCSize = 2, branchInstructionSize = 8, KSize = 4;
+        IndexFunction indexFunction = IndexFunctions.hashConcat(branchInstructionSize, KSize, HashMode.XOR, BHRSize);
+        Function<IndexedCache, BranchPredictor> factory;
+        switch (args[0]) {
+            case "GAs":
+                factory = table -> new GAs(BHRSize, SCSize, indexFunction, table);
+                break;
+            case "PAs":
+                factory = table -> new PAs(BHRSize, SCSize, branchInstructionSize, indexFunction, table);
+                break;
+            default:
+                throw new IllegalArgumentException("only GAs and PAs share a PSPHT, unknown predictor " + args[0]);
+        }
+        ConcurrentPageHistoryTable table = tableOf(indexFunction, BHRSize, SCSize, args[1].equals("RACY"));
+
+        Map<String, TraceReader> traces = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        try (SmtEngine engine = new SmtEngine(Math.max(1, args.length - 2), Simulator.DEFAULT_CHUNK_SIZE)) {
+            for (int i = 2; i < args.length; i++) {
+                Path path = Paths.get(args[i]);
+                traces.put(path.getFileName() + "#" + (i - 2), TraceFormat.open(path));
+            }
+            System.out.print(SimulationResult.table(engine.run(factory, table, traces)));
+        } finally {
+            for (TraceReader trace : traces.values()) trace.close();
+        }
+        System.out.printf("shared table: %d of %d rows, wall time: %.3f s%n", table.getOccupancy(),
+                table.getCapacity(), (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * the task of one hardware thread, its predictor and its trace are only used by the pool thread
+     */
+    private final class HardwareThread implements Callable<SimulationResult> {
+        final String name;
+        final BranchPredictor predictor;
+        final TraceReader trace;
+
+        HardwareThread(String name, BranchPredictor predictor, TraceReader trace) {
+            this.name = name;
+            this.predictor = predictor;
+            this.trace = trace;
+        }
+
+        @Override
+        public SimulationResult call() throws IOException {
+            return new Simulator(chunkSize).run(name, predictor, trace);
+        }
+    }
+}
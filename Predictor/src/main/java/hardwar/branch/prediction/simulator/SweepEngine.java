@@ -0,0 +1,351 @@
+package hardwar.branch.prediction.simulator;
+
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.HashMode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * design space sweep over the judged predictors
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the configurations are split in batches on a work stealing pool. a batch opens its own reader of the
+ *    trace, the mappings of all readers share the page cache, and it runs every predictor of the batch over
+ *    each decoded chunk.
+ *
+ * 2) the checkpoint is a text file. the first line names the trace and its record count, then every finished
+ *    configuration is appended as: configuration, branches, mispredictions, instructions, elapsed nanos
+ *    separated by tabs. a sweep which is started with the same checkpoint skips the finished configurations.
+ *
+ * 3) a configuration which throws is reported as failed and it is not written in the checkpoint.
+ * -------------------------------------------------------
+ */
+
+public class SweepEngine implements Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 4;
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final int chunkSize;
+
+    public SweepEngine() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE, Simulator.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param parallelism number of pool threads
+     * @param batchSize   number of configurations which share one pass over the trace
+     * @param chunkSize   number of branches which are decoded at once
+     */
+    public SweepEngine(int parallelism, int batchSize, int chunkSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batch size must be positive");
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.pool = new ForkJoinPool(parallelism);
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * builds every valid configuration of the selected predictors, the configurations of the same hardware
+     * are listed once
+     *
+     * @return the configurations in the order of the arguments
+     */
+    public static List<PredictorConfig> space(List<String> predictors, int[] BHRSizes, int[] SCSizes,
+                                              int[] branchInstructionSizes, int[] KSizes, HashMode[] hashModes) {
+        Set<PredictorConfig> configs = new LinkedHashSet<>();
+        for (String predictor : predictors)
+            for (int BHRSize : BHRSizes)
+                for (int SCSize : SCSizes)
+                    for (int branchInstructionSize : branchInstructionSizes)
+                        for (int KSize : KSizes)
+                            for (HashMode hashMode : hashModes) {
+                                PredictorConfig config = new PredictorConfig(predictor, BHRSize, SCSize,
+                                        branchInstructionSize, KSize, hashMode);
+                                if (config.isValid()) configs.add(config);
+                            }
+        return new ArrayList<>(configs);
+    }
+
+    /**
+     * simulate every configuration over the trace
+     *
+     * @param trace      the trace file
+     * @param configs    the configurations
+     * @param checkpoint the checkpoint file, null for no checkpoint
+     * @return the result of each configuration in the order of configs
+     * @throws IOException if the trace or the checkpoint can not be read or written
+     */
+    public List<SweepResult> run(Path trace, List<PredictorConfig> configs, Path checkpoint) throws IOException {
+        String traceLine;
+        try (TraceReader reader = TraceFormat.open(trace)) {
+            traceLine = "# trace=" + trace.getFileName() + " records=" + reader.recordCount();
+        }
+        Map<PredictorConfig, SweepResult> results = new ConcurrentHashMap<>();
+        if (checkpoint != null) results.putAll(load(checkpoint, traceLine));
+
+        List<PredictorConfig> pending = new ArrayList<>();
+        for (PredictorConfig config : new LinkedHashSet<>(configs)) {
+            if (!results.containsKey(config)) pending.add(config);
+        }
+
+        try (Checkpoint writer = new Checkpoint(checkpoint, traceLine)) {
+            pool.invoke(new Batch(trace, pending, 0, pending.size(), results, writer));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<SweepResult> ordered = new ArrayList<>(configs.size());
+        for (PredictorConfig config : configs) ordered.add(results.get(config));
+        return ordered;
+    }
+
+    private static Map<PredictorConfig, SweepResult> load(Path checkpoint, String traceLine) throws IOException {
+        Map<PredictorConfig, SweepResult> results = new LinkedHashMap<>();
+        if (!Files.exists(checkpoint)) return results;
+        try (BufferedReader reader = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null) return results;
+            if (!line.equals(traceLine))
+                throw new IOException(checkpoint + " is a checkpoint of another trace: " + line);
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                // a line which is cut by a crash is simulated again
+                if (fields.length != 5) continue;
+                PredictorConfig config = PredictorConfig.parse(fields[0]);
+                results.put(config, new SweepResult(config, new SimulationResult(fields[0],
+                        Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                        Long.parseLong(fields[4]))));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * appends the finished configurations, it is shared by all the batches
+     */
+    private static final class Checkpoint implements Closeable {
+        private final BufferedWriter writer;
+
+        Checkpoint(Path path, String traceLine) throws IOException {
+            if (path == null) {
+                writer = null;
+                return;
+            }
+            boolean fresh = !Files.exists(path) || Files.size(path) == 0;
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+            if (fresh) {
+                writer.write(traceLine);
+                writer.newLine();
+                writer.flush();
+            }
+        }
+
+        synchronized void append(PredictorConfig config, SimulationResult result) throws IOException {
+            if (writer == null) return;
+            writer.write(config + "\t" + result.getBranches() + "\t" + result.getMispredictions() + "\t"
+                    + result.getInstructions() + "\t" + result.getElapsedNanos());
+            writer.newLine();
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) writer.close();
+        }
+    }
+
+    /**
+     * splits the configurations in halves until a batch is small enough to be simulated in one pass
+     */
+    private final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path trace;
+        private final List<PredictorConfig> configs;
+        private final int from;
+        private final int to;
+        private final Map<PredictorConfig, SweepResult> results;
+        private final Checkpoint checkpoint;
+
+        Batch(Path trace, List<PredictorConfig> configs, int from, int to, Map<PredictorConfig, SweepResult> results,
+              Checkpoint checkpoint) {
+            this.trace = trace;
+            this.configs = configs;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.checkpoint = checkpoint;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batchSize) {
+                try {
+                    simulate();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Batch(trace, configs, from, middle, results, checkpoint),
+                    new Batch(trace, configs, middle, to, results, checkpoint));
+        }
+
+        private void simulate() throws IOException {
+            int n = to - from;
+            if (n == 0) return;
+            BranchPredictor[] predictors = new BranchPredictor[n];
+            String[] errors = new String[n];
+            long[] mispredictions = new long[n];
+            long[] elapsed = new long[n];
+            for (int i = 0; i < n; i++) {
+                try {
+                    predictors[i] = configs.get(from + i).create();
+                } catch (RuntimeException e) {
+                    errors[i] = e.toString();
+                }
+            }
+
+            long[] pcs = new long[chunkSize];
+            boolean[] outcomes = new boolean[chunkSize];
+            long branches = 0;
+            long instructions;
+            try (TraceReader reader = TraceFormat.open(trace)) {
+                instructions = reader.instructionCount();
+                int size;
+                while ((size = reader.read(pcs, outcomes)) > 0) {
+                    for (int i = 0; i < n; i++) {
+                        if (errors[i] != null) continue;
+                        long start = System.nanoTime();
+                        try {
+                            mispredictions[i] += predictors[i].simulate(pcs, outcomes, 0, size, null);
+                        } catch (RuntimeException e) {
+                            errors[i] = e.toString();
+                            predictors[i] = null;
+                        }
+                        elapsed[i] += System.nanoTime() - start;
+                    }
+                    branches += size;
+                }
+            }
+
+            for (int i = 0; i < n; i++) {
+                PredictorConfig config = configs.get(from + i);
+                if (errors[i] != null) {
+                    results.put(config, SweepResult.failed(config, errors[i]));
+                    continue;
+                }
+                SimulationResult result = new SimulationResult(config.toString(), branches, mispredictions[i],
+                        instructions, elapsed[i]);
+                checkpoint.append(config, result);
+                results.put(config, new SweepResult(config, result));
+            }
+        }
+    }
+
+    /**
+     * usage: SweepEngine trace-file [--predictors GAg,GAs] [--bhr 2-12] [--sc 2] [--bis 8] [--k 2-6]
+     * [--hash XOR] [--checkpoint file] [--threads n] [--batch n]
+     * <p>
+     * a range is either first-last or a comma separated list
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: SweepEngine <trace-file> [--predictors GAg,GAs] [--bhr 2-12] [--sc 2] "
+                    + "[--bis 8] [--k 2-6] [--hash XOR] [--checkpoint file] [--threads n] [--batch n]");
+            System.exit(2);
+        }
+        List<String> predictors = Arrays.asList(MultiPredictorEngine.JUDGED_PREDICTORS);
+        int[] BHRSizes = range("2-12");
+        int[] SCSizes = range("2");
+        int[] branchInstructionSizes = range("8");
+        int[] KSizes = range("2-6");
+        HashMode[] hashModes = {HashMode.XOR};
+        Path checkpoint = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = DEFAULT_BATCH_SIZE;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--predictors":
+                    predictors = Arrays.asList(value.split(","));
+                    break;
+                case "--bhr":
+                    BHRSizes = range(value);
+                    break;
+                case "--sc":
+                    SCSizes = range(value);
+                    break;
+                case "--bis":
+                    branchInstructionSizes = range(value);
+                    break;
+                case "--k":
+                    KSizes = range(value);
+                    break;
+                case "--hash":
+                    String[] names = value.split(",");
+                    hashModes = new HashMode[names.length];
+                    for (int j = 0; j < names.length; j++) hashModes[j] = HashMode.valueOf(names[j]);
+                    break;
+                case "--checkpoint":
+                    checkpoint = Paths.get(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        List<PredictorConfig> configs = space(predictors, BHRSizes, SCSizes, branchInstructionSizes, KSizes,
+                hashModes);
+        try (SweepEngine engine = new SweepEngine(threads, batch, Simulator.DEFAULT_CHUNK_SIZE)) {
+            System.out.print(SweepResult.table(engine.run(Paths.get(args[0]), configs, checkpoint)));
+        }
+    }
+
+    private static int[] range(String value) {
+        int dash = value.indexOf('-');
+        if (dash > 0) {
+            int first = Integer.parseInt(value.substring(0, dash));
+            int last = Integer.parseInt(value.substring(dash + 1));
+            int[] range = new int[Math.max(0, last - first + 1)];
+            for (int i = 0; i < range.length; i++) range[i] = first + i;
+            return range;
+        }
+        String[] parts = value.split(",");
+        int[] range = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) range[i] = Integer.parseInt(parts[i]);
+        return range;
+    }
+}
@@ -0,0 +1,98 @@
+package hardwar.branch.prediction.simulator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The result of one configuration of a sweep. A configuration which failed has an error and no statistics.
+ */
+public class SweepResult {
+    /**
+     * cheapest storage first, the more accurate one first for the same storage
+     */
+    public static final Comparator<SweepResult> BY_STORAGE = Comparator
+            .comparingLong(SweepResult::storageBits)
+            .thenComparing(Comparator.comparingDouble(SweepResult::accuracy).reversed())
+            .thenComparing(result -> result.config.toString());
+
+    private final PredictorConfig config;
+    private final SimulationResult result;
+    private final String error;
+
+    public SweepResult(PredictorConfig config, SimulationResult result) {
+        this(config, result, null);
+    }
+
+    private SweepResult(PredictorConfig config, SimulationResult result, String error) {
+        this.config = config;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @param config the configuration which could not be simulated
+     * @param error  the reason
+     * @return a failed result
+     */
+    public static SweepResult failed(PredictorConfig config, String error) {
+        return new SweepResult(config, null, error);
+    }
+
+    public PredictorConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the statistics, null if the configuration failed
+     */
+    public SimulationResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return the reason of the failure, null if the configuration is simulated
+     */
+    public String getError() {
+        return error;
+    }
+
+    public long storageBits() {
+        return config.storageBits();
+    }
+
+    /**
+     * @return the accuracy, -1 if the configuration failed
+     */
+    public double accuracy() {
+        return result == null ? -1 : result.accuracy();
+    }
+
+    /**
+     * sorts the results by storage and marks the configurations which are more accurate than every
+     * cheaper configuration with a *
+     *
+     * @param results the results of one sweep
+     * @return the results as a text table, one row per configuration
+     */
+    public static String table(List<SweepResult> results) {
+        List<SweepResult> sorted = new ArrayList<>(results);
+        sorted.sort(BY_STORAGE);
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-28s %14s %10s %10s %14s%n",
+                "configuration", "storage(bits)", "accuracy", "MPKI", "mispredicted"));
+        double best = -1;
+        for (SweepResult result : sorted) {
+            if (result.result == null) {
+                table.append(String.format("%-28s %14d failed: %s%n", result.config, result.storageBits(), result.error));
+                continue;
+            }
+            boolean frontier = result.accuracy() > best;
+            if (frontier) best = result.accuracy();
+            table.append(String.format("%-28s %14d %9.4f%% %10.4f %14d%s%n", result.config, result.storageBits(),
+                    result.accuracy() * 100, result.result.mpki(), result.result.getMispredictions(),
+                    frontier ? " *" : ""));
+        }
+        return table.toString();
+    }
+}
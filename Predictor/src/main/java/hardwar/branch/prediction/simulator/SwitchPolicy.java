@@ -0,0 +1,8 @@
+package hardwar.branch.prediction.simulator;
+
+public enum SwitchPolicy {
+    SHARED, // the programs share all the predictor state, nothing is saved on a switch
+    FLUSH, // the predictor is reset to its initial state on every switch
+    SWAP_HISTORY, // each program keeps its history registers and SC register, the tables are shared
+    SWAP_ALL // each program keeps its history registers and its own partition of the tables
+}
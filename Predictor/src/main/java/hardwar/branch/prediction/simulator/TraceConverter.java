@@ -0,0 +1,181 @@
+package hardwar.branch.prediction.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+ * streaming converter from the text trace to the binary layouts
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) every line of the text is one branch: pc, target, opcode and outcome separated by spaces or tabs.
+ *    the numbers are hex with an optional 0x prefix, the outcome is T, N, 1, 0, TAKEN or NOT_TAKEN.
+ *
+ * 2) empty lines and everything after a # are ignored.
+ *
+ * 3) the text is parsed from a byte buffer, no string or object is built per line.
+ * -------------------------------------------------------
+ */
+
+public class TraceConverter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long line = 1;
+
+    private TraceConverter(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * parse the text trace and write every branch into the output
+     *
+     * @param in  the text trace
+     * @param out the binary trace, it is not closed
+     * @return number of converted branches
+     * @throws IOException if the text can not be read or parsed, or the output can not be written
+     */
+    public static long convert(InputStream in, TraceOutput out) throws IOException {
+        return new TraceConverter(in).convert(out);
+    }
+
+    private long convert(TraceOutput out) throws IOException {
+        long records = 0;
+        while (true) {
+            int c = skipSpaces();
+            if (c == -1) break;
+            if (c == '\n') {
+                line++;
+                continue;
+            }
+            if (c == '#') {
+                skipLine();
+                continue;
+            }
+            long pc = parseHex(c, "pc");
+            long target = parseHex(skipSpaces(), "target");
+            long opcode = parseHex(skipSpaces(), "opcode");
+            boolean taken = parseOutcome(skipSpaces());
+            c = skipSpaces();
+            if (c == '#') {
+                skipLine();
+            } else if (c == '\n') {
+                line++;
+            } else if (c != -1) {
+                throw error("unexpected character '" + (char) c + "'");
+            }
+            out.write(pc, target, (int) opcode, taken);
+            records++;
+        }
+        return records;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread(int c) {
+        if (c != -1) position--;
+    }
+
+    private int skipSpaces() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t' || c == '\r');
+        return c;
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != '\n' && c != -1);
+        line++;
+    }
+
+    private long parseHex(int c, String field) throws IOException {
+        if (c == '0') {
+            int x = read();
+            if (x == 'x' || x == 'X') {
+                c = read();
+            } else {
+                unread(x);
+            }
+        }
+        int digit = Character.digit(c, 16);
+        if (c == -1 || digit < 0) throw error("missing " + field);
+        long value = 0;
+        int digits = 0;
+        while (digit >= 0) {
+            if (++digits > 16) throw error(field + " is longer than 64 bits");
+            value = (value << 4) | digit;
+            c = read();
+            digit = c == -1 ? -1 : Character.digit(c, 16);
+        }
+        unread(c);
+        return value;
+    }
+
+    private boolean parseOutcome(int c) throws IOException {
+        boolean taken;
+        if (c == 'T' || c == 't' || c == '1') {
+            taken = true;
+        } else if (c == 'N' || c == 'n' || c == '0') {
+            taken = false;
+        } else {
+            throw error("missing outcome");
+        }
+        // skip the rest of TAKEN or NOT_TAKEN
+        do {
+            c = read();
+        } while (Character.isLetter(c) || c == '_');
+        unread(c);
+        return taken;
+    }
+
+    private IOException error(String message) {
+        return new IOException("line " + line + ": " + message);
+    }
+
+    /**
+     * usage: TraceConverter text-file trace-file [--fixed] [--instructions N]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: TraceConverter <text-file|-> <trace-file> [--fixed] [--instructions N]");
+            System.exit(2);
+        }
+        boolean fixed = false;
+        long instructions = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--fixed")) {
+                fixed = true;
+            } else if (args[i].equals("--instructions") && i + 1 < args.length) {
+                instructions = Long.parseLong(args[++i]);
+            } else {
+                throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        Path output = Paths.get(args[1]);
+        try (InputStream in = args[0].equals("-") ? System.in : Files.newInputStream(Paths.get(args[0]));
+             TraceOutput out = fixed ? new TraceWriter(output) : new CompactTraceWriter(output)) {
+            long records = convert(in, out);
+            out.setInstructionCount(instructions);
+            System.out.println(records + " branches written to " + args[1]);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package hardwar.branch.prediction.simulator;
+
+/*
+ * binary branch trace layout
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) every number is little endian.
+ *
+ * 2) the file starts with a HEADER_SIZE bytes header:
+ *    magic (int), version (int), record count (long), instruction count (long), reserved (long).
+ *    the instruction count is the number of executed instructions the trace covers and is used for MPKI,
+ *    it is zero if it is unknown.
+ *
+ * 3) the header is followed by record count records of RECORD_SIZE bytes:
+ *    pc (long), target (long), opcode (int), flags (int). the first bit of flags is set if the branch is taken.
+ *
+ * 4) the compact layout has the same header with COMPACT_MAGIC. the records are grouped in blocks of at most
+ *    BLOCK_RECORDS records, each block is:
+ *    record count (int), payload size in bytes (int), outcome bits, then per record three varints:
+ *    zigzag(pc - previous pc), zigzag(target - pc), opcode.
+ *    the outcome bits are packed eight per byte, the first record is the lowest bit of the first byte.
+ *    the previous pc is zero at the start of each block, so every block can be decoded on its own.
+ * -------------------------------------------------------
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class TraceFormat {
+    public static final int MAGIC = 0x52545042; // "BPTR" in little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 24;
+    public static final int COMPACT_MAGIC = 0x43545042; // "BPTC" in little endian
+    public static final int BLOCK_RECORDS = 4096;
+    public static final int BLOCK_HEADER_SIZE = 8;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int RECORD_COUNT_OFFSET = 8;
+    static final int INSTRUCTION_COUNT_OFFSET = 16;
+
+    static final int PC_OFFSET = 0;
+    static final int TARGET_OFFSET = 8;
+    static final int OPCODE_OFFSET = 16;
+    static final int FLAGS_OFFSET = 20;
+
+    static final int TAKEN_FLAG = 1;
+
+    private TraceFormat() {
+    }
+
+    /**
+     * open a trace in either layout
+     *
+     * @param path the trace file
+     * @return a reader which matches the magic of the file
+     * @throws IOException if the file can not be opened or it is not a trace
+     */
+    public static TraceReader open(Path path) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) break;
+            }
+        }
+        if (magic.hasRemaining()) throw new IOException(path + " is not a branch trace");
+        if (magic.getInt(0) == COMPACT_MAGIC) return new CompactTraceReader(path);
+        return new MappedTraceReader(path);
+    }
+
+    /**
+     * @param value a signed number
+     * @return the number with the sign moved to the lowest bit, so small negative numbers stay small
+     */
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * @param value a zigzag encoded number
+     * @return the signed number
+     */
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
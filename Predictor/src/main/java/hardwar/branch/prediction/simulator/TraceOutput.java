@@ -0,0 +1,30 @@
+package hardwar.branch.prediction.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The writing side of a trace, the counts in the header are written when the output is closed.
+ */
+public interface TraceOutput extends Closeable {
+    /**
+     * append a branch record to the trace
+     *
+     * @param pc     the branch address
+     * @param target the jump address
+     * @param opcode the branch opcode
+     * @param taken  the branch result
+     * @throws IOException if the trace can not be written
+     */
+    void write(long pc, long target, int opcode, boolean taken) throws IOException;
+
+    /**
+     * @param instructionCount number of executed instructions the trace covers
+     */
+    void setInstructionCount(long instructionCount);
+
+    /**
+     * @return number of records written so far
+     */
+    long getRecordCount();
+}
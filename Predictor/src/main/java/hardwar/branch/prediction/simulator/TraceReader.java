@@ -0,0 +1,67 @@
+package hardwar.branch.prediction.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A cursor over the branch records of a trace. The reader does not build an object per record,
+ * call next and then read the fields of the current record.
+ */
+public interface TraceReader extends Closeable {
+    /**
+     * move the cursor to the next record
+     *
+     * @return false if there are no more records
+     * @throws IOException if the trace can not be read
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return the address of the current branch instruction
+     */
+    long pc();
+
+    /**
+     * @return the jump address of the current branch instruction
+     */
+    long target();
+
+    /**
+     * @return the opcode of the current branch instruction
+     */
+    int opcode();
+
+    /**
+     * @return true if the current branch is taken
+     */
+    boolean taken();
+
+    /**
+     * @return number of branch records in the trace
+     */
+    long recordCount();
+
+    /**
+     * @return number of executed instructions the trace covers, zero if it is unknown
+     */
+    long instructionCount();
+
+    /**
+     * read the next records into the arrays, starting at index 0
+     *
+     * @param pcs      receives the branch addresses
+     * @param outcomes receives the branch results
+     * @return number of records read, zero at the end of the trace
+     * @throws IOException if the trace can not be read
+     */
+    default int read(long[] pcs, boolean[] outcomes) throws IOException {
+        int n = Math.min(pcs.length, outcomes.length);
+        int i = 0;
+        while (i < n && next()) {
+            pcs[i] = pc();
+            outcomes[i] = taken();
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,73 @@
+package hardwar.branch.prediction.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a {@link TraceFormat} file. Records are collected in a direct buffer and the header counts are written
+ * when the writer is closed.
+ */
+public class TraceWriter implements TraceOutput {
+    private static final int BUFFER_RECORDS = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long recordCount;
+    private long instructionCount;
+
+    public TraceWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * TraceFormat.RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        // the header is written on close
+        channel.position(TraceFormat.HEADER_SIZE);
+    }
+
+    @Override
+    public void write(long pc, long target, int opcode, boolean taken) throws IOException {
+        if (buffer.remaining() < TraceFormat.RECORD_SIZE) flush();
+        buffer.putLong(pc);
+        buffer.putLong(target);
+        buffer.putInt(opcode);
+        buffer.putInt(taken ? TraceFormat.TAKEN_FLAG : 0);
+        recordCount++;
+    }
+
+    @Override
+    public void setInstructionCount(long instructionCount) {
+        this.instructionCount = instructionCount;
+    }
+
+    @Override
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            buffer.putInt(TraceFormat.MAGIC);
+            buffer.putInt(TraceFormat.VERSION);
+            buffer.putLong(recordCount);
+            buffer.putLong(instructionCount);
+            buffer.putLong(0L);
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) position += channel.write(buffer, position);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.simulator.SmtEngine;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConcurrentPageHistoryTableTest {
+    private static final int THREADS = 8;
+    private static final int ROWS = 16;
+
+    @Test
+    void compareAndSetKeepsEveryCounterStep() throws Exception {
+        // 8 bit counters do not saturate below 255 steps
+        ConcurrentPageHistoryTable table = new ConcurrentPageHistoryTable(ROWS, 8);
+        int steps = 30;
+        runConcurrently(thread -> {
+            for (int step = 0; step < steps; step++) {
+                for (int row = 0; row < ROWS; row++) table.getAndCount(row, 0, true, CountMode.SATURATING);
+            }
+        });
+        for (int row = 0; row < ROWS; row++) assertEquals(THREADS * steps, table.get(row));
+        assertEquals(ROWS, table.getAllocations());
+        assertEquals(ROWS, table.getOccupancy());
+    }
+
+    @Test
+    void racyModeCountsEveryAllocationOnce() throws Exception {
+        // a few rows and many rounds, so the threads often allocate the same row at the same time
+        int rows = 4, rounds = 5000;
+        ConcurrentPageHistoryTable table = new ConcurrentPageHistoryTable(rows, 2, true);
+        CyclicBarrier barrier = new CyclicBarrier(THREADS, table::clear);
+        runConcurrently(thread -> {
+            for (int round = 0; round < rounds; round++) {
+                for (int row = 0; row < rows; row++) table.getAndCount(row, 0, (row & 1) == 0, CountMode.SATURATING);
+                // the last thread which arrives clears the table for the next round
+                barrier.await();
+            }
+        });
+        assertEquals((long) rounds * rows, table.getAllocations());
+    }
+
+    @Test
+    void blocksAreMaskedToTheColumns() {
+        ConcurrentPageHistoryTable table = new ConcurrentPageHistoryTable(ROWS, 2);
+        table.put(3, 0x1FF);
+        assertEquals(3, table.get(3));
+        assertEquals(1, table.setDefault(4, 0x5));
+    }
+
+    @Test
+    void sharedTableMustHaveTheSCSize() {
+        IndexFunction indexFunction = IndexFunctions.history();
+        ConcurrentPageHistoryTable table = SmtEngine.tableOf(indexFunction, 4, 3, false);
+        assertThrows(IllegalArgumentException.class, () -> new GAs(4, 2, indexFunction, table));
+        new GAs(4, 3, indexFunction, table);
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runConcurrently(Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            List<Future<Void>> running = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final int thread = i;
+                Callable<Void> task = () -> {
+                    start.await();
+                    worker.run(thread);
+                    return null;
+                };
+                running.add(pool.submit(task));
+            }
+            for (Future<Void> future : running) future.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
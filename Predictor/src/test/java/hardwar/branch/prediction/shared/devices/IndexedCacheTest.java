@@ -0,0 +1,87 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.ReplacementPolicy;
+import hardwar.branch.prediction.shared.Snapshotable;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IndexedCacheTest {
+    private static final int ROWS = 16;
+
+    private static void assertMasked(IndexedCache table) {
+        table.put(3, 0x1FF);
+        assertEquals(3, table.get(3));
+        assertEquals(1, table.setDefault(4, 0x5));
+        assertEquals(2, table.getAndCount(5, 0xFE, true, CountMode.SATURATING));
+        assertEquals(3, table.get(5));
+    }
+
+    @Test
+    void blocksAreMaskedToTheColumns() throws IOException {
+        assertMasked(new FlatPageHistoryTable(ROWS, 2));
+        assertMasked(new SetAssociativeCache(4, 2, 4, 2, ReplacementPolicy.LRU));
+        try (OffHeapPageHistoryTable table = new OffHeapPageHistoryTable(ROWS, 2)) {
+            assertMasked(table);
+        }
+    }
+
+    @Test
+    void predictorsRejectAnotherBlockSize() throws IOException {
+        try (OffHeapPageHistoryTable table = new OffHeapPageHistoryTable(1 << 12, 3)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> new GAp(4, 2, IndexFunctions.concat(8, 4), 4, table));
+            assertThrows(IllegalArgumentException.class,
+                    () -> new PAp(4, 2, 8, IndexFunctions.concat(8, 4), table));
+        }
+    }
+
+    /**
+     * allocates every row, clears the table and allocates a few rows again, so the allocation count is not the
+     * occupancy
+     */
+    private static <T extends IndexedCache & Snapshotable> void assertAllocationsRestored(Supplier<T> factory)
+            throws IOException {
+        T saved = factory.get();
+        for (int row = 0; row < ROWS; row++) saved.setDefault(row, 1);
+        saved.clear();
+        for (int row = 0; row < ROWS / 4; row++) saved.getAndCount(row, 0, true, CountMode.SATURATING);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SnapshotOutput out = new SnapshotOutput(Channels.newChannel(bytes))) {
+            saved.snapshot(out);
+        }
+        T restored = factory.get();
+        try (SnapshotInput in = new SnapshotInput(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))) {
+            restored.restore(in);
+        }
+        assertEquals(saved.getAllocations(), restored.getAllocations());
+        assertEquals(saved.getOccupancy(), restored.getOccupancy());
+
+        // the both tables count the next allocation the same
+        saved.setDefault(ROWS - 1, 1);
+        restored.setDefault(ROWS - 1, 1);
+        assertEquals(saved.getAllocations(), restored.getAllocations());
+    }
+
+    @Test
+    void restoredTablesContinueTheAllocationCount() throws IOException {
+        assertAllocationsRestored(() -> new FlatPageHistoryTable(ROWS, 2));
+        assertAllocationsRestored(() -> new SetAssociativeCache(4, 4, 4, 2, ReplacementPolicy.LRU));
+        assertAllocationsRestored(() -> new PerAddressPredictionHistoryTable(4, ROWS / 4, 2, false));
+        assertAllocationsRestored(() -> new PerAddressPredictionHistoryTable(4, ROWS / 4, 2, true));
+        assertAllocationsRestored(() -> new OffHeapPageHistoryTable(ROWS, 2));
+    }
+}
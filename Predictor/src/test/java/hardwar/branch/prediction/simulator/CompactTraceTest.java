@@ -0,0 +1,114 @@
+package hardwar.branch.prediction.simulator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactTraceTest {
+    // more than two blocks, the last one is partial
+    private static final int RECORDS = 2 * TraceFormat.BLOCK_RECORDS + 123;
+
+    @TempDir
+    Path directory;
+
+    private final long[] pcs = new long[RECORDS];
+    private final long[] targets = new long[RECORDS];
+    private final int[] opcodes = new int[RECORDS];
+    private final boolean[] outcomes = new boolean[RECORDS];
+
+    /**
+     * random records with the edge cases first: full 64 bit addresses, deltas of both signs which overflow a
+     * long, and negative opcodes
+     */
+    private void fill(long seed) {
+        long[] edges = {0, Long.MIN_VALUE, Long.MAX_VALUE, -1, 1, Long.MIN_VALUE, 0x7FFF_FFFF_FFFF_F000L, 0x1000};
+        Random random = new Random(seed);
+        for (int i = 0; i < RECORDS; i++) {
+            if (i < edges.length) {
+                pcs[i] = edges[i];
+                targets[i] = edges[edges.length - 1 - i];
+                opcodes[i] = i % 2 == 0 ? -1 : Integer.MIN_VALUE;
+            } else if (random.nextBoolean()) {
+                // a loop: small negative and positive deltas
+                pcs[i] = pcs[i - 1] + random.nextInt(256) - 192;
+                targets[i] = pcs[i] - random.nextInt(1 << 12);
+                opcodes[i] = random.nextInt(16);
+            } else {
+                pcs[i] = random.nextLong();
+                targets[i] = random.nextLong();
+                opcodes[i] = random.nextInt();
+            }
+            outcomes[i] = random.nextBoolean();
+        }
+    }
+
+    private Path write(long instructionCount) throws IOException {
+        Path path = directory.resolve("trace.compact");
+        try (CompactTraceWriter writer = new CompactTraceWriter(path)) {
+            for (int i = 0; i < RECORDS; i++) writer.write(pcs[i], targets[i], opcodes[i], outcomes[i]);
+            writer.setInstructionCount(instructionCount);
+            assertEquals(RECORDS, writer.getRecordCount());
+        }
+        return path;
+    }
+
+    @Test
+    void recordsRoundTrip() throws IOException {
+        fill(1);
+        Path path = write(123456789L);
+        try (TraceReader reader = TraceFormat.open(path)) {
+            assertTrue(reader instanceof CompactTraceReader);
+            assertEquals(RECORDS, reader.recordCount());
+            assertEquals(123456789L, reader.instructionCount());
+            for (int i = 0; i < RECORDS; i++) {
+                assertTrue(reader.next());
+                assertEquals(pcs[i], reader.pc(), "pc of record " + i);
+                assertEquals(targets[i], reader.target(), "target of record " + i);
+                assertEquals(opcodes[i], reader.opcode(), "opcode of record " + i);
+                assertEquals(outcomes[i], reader.taken(), "outcome of record " + i);
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    void chunksRoundTripAcrossBlocksAndWindows() throws IOException {
+        fill(2);
+        Path path = write(0);
+        long[] readPcs = new long[RECORDS];
+        boolean[] readOutcomes = new boolean[RECORDS];
+        long[] chunkPcs = new long[1000];
+        boolean[] chunkOutcomes = new boolean[1000];
+        // a small window is mapped again in the middle of the blocks
+        try (CompactTraceReader reader = new CompactTraceReader(path, 4096)) {
+            int read = 0, n;
+            while ((n = reader.read(chunkPcs, chunkOutcomes)) > 0) {
+                System.arraycopy(chunkPcs, 0, readPcs, read, n);
+                System.arraycopy(chunkOutcomes, 0, readOutcomes, read, n);
+                read += n;
+            }
+            assertEquals(RECORDS, read);
+        }
+        assertArrayEquals(pcs, readPcs);
+        assertArrayEquals(outcomes, readOutcomes);
+    }
+
+    @Test
+    void emptyTrace() throws IOException {
+        Path path = directory.resolve("empty.compact");
+        new CompactTraceWriter(path).close();
+        try (TraceReader reader = TraceFormat.open(path)) {
+            assertEquals(0, reader.recordCount());
+            assertFalse(reader.next());
+            assertEquals(0, reader.read(new long[8], new boolean[8]));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package hardwar.branch.prediction.simulator;
+
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.PredictionHandle;
+import hardwar.branch.prediction.shared.SnapshotInput;
+import hardwar.branch.prediction.shared.SnapshotOutput;
+import hardwar.branch.prediction.shared.devices.IndexFunctions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PredictorSnapshotTest {
+    private static final int BRANCHES = 20000;
+    private static final int HALF = BRANCHES / 2;
+
+    @TempDir
+    Path directory;
+
+    private final long[] pcs = new long[BRANCHES];
+    private final boolean[] outcomes = new boolean[BRANCHES];
+
+    /**
+     * a few loops and correlated branches over a small set of addresses, so the tables are warm at the half
+     */
+    private void fill(long seed) {
+        Random random = new Random(seed);
+        long[] addresses = new long[64];
+        for (int i = 0; i < addresses.length; i++) addresses[i] = random.nextLong() & 0xFFFF_FFFFL;
+        for (int i = 0; i < BRANCHES; i++) {
+            int branch = random.nextInt(addresses.length);
+            pcs[i] = addresses[branch];
+            outcomes[i] = branch % 4 == 0 ? i % 7 != 0 : branch % 4 == 1 ? random.nextBoolean()
+                    : (branch & 8) != 0 ^ (i > 0 && outcomes[i - 1]);
+        }
+    }
+
+    private static Supplier<BranchPredictor> folded() {
+        return () -> new GAg(8, 2, IndexFunctions.foldedGshare(12, 8), 40);
+    }
+
+    private static Supplier<BranchPredictor> of(String predictor) {
+        PredictorConfig config = new PredictorConfig(predictor, 6, 2, 8, 4, HashMode.XOR);
+        return config::create;
+    }
+
+    /**
+     * runs the second half on the warm predictor and on a fresh predictor which is restored from its snapshot,
+     * the predictions of every branch must be the same
+     */
+    private void assertRestoredEquivalent(Supplier<BranchPredictor> factory) throws IOException {
+        BranchPredictor warm = factory.get();
+        warm.simulate(pcs, outcomes, 0, HALF, null);
+        Path path = directory.resolve("predictor.snapshot");
+        PredictorSnapshot.save(warm, path);
+
+        BranchPredictor restored = factory.get();
+        PredictorSnapshot.restore(restored, path);
+        assertEquals(warm.monitor(), restored.monitor());
+
+        assertContinuesEqually(warm, restored);
+    }
+
+    private void assertContinuesEqually(BranchPredictor expected, BranchPredictor actual) {
+        boolean[] expectedPredictions = new boolean[BRANCHES];
+        boolean[] actualPredictions = new boolean[BRANCHES];
+        int expectedMispredictions = expected.simulate(pcs, outcomes, HALF, BRANCHES, expectedPredictions);
+        int actualMispredictions = actual.simulate(pcs, outcomes, HALF, BRANCHES, actualPredictions);
+        assertEquals(expectedMispredictions, actualMispredictions);
+        assertArrayEquals(expectedPredictions, actualPredictions);
+        assertEquals(expected.monitor(), actual.monitor());
+    }
+
+    @Test
+    void restoredPredictorsContinueAsTheSaved() throws IOException {
+        fill(1);
+        assertRestoredEquivalent(folded());
+        for (String predictor : new String[]{"GAg", "GAp", "GAs", "PAg", "PAp", "PAs", "SAg", "SAp", "SAs"})
+            assertRestoredEquivalent(of(predictor));
+    }
+
+    @Test
+    void copiedPredictorContinuesAsTheOriginal() {
+        fill(2);
+        BranchPredictor warm = of("PAs").get();
+        warm.simulate(pcs, outcomes, 0, HALF, null);
+        BranchPredictor copy = of("PAs").get();
+        PredictorSnapshot.copy(warm, copy);
+        assertContinuesEqually(warm, copy);
+    }
+
+    /**
+     * @return the context of the predictor, or its whole state if context is false
+     */
+    private static byte[] save(BranchPredictor predictor, boolean context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (SnapshotOutput out = new SnapshotOutput(Channels.newChannel(bytes))) {
+            if (context) predictor.saveContext(out);
+            else predictor.snapshot(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void restoredContextKeepsTheTable() throws IOException {
+        fill(3);
+        BranchPredictor predictor = folded().get();
+        predictor.simulate(pcs, outcomes, 0, HALF, null);
+        byte[] context = save(predictor, true);
+
+        // another software thread runs on the predictor, then the history of the first one is switched back
+        predictor.simulate(pcs, outcomes, HALF, BRANCHES, null);
+        byte[] trained = save(predictor, false);
+        try (SnapshotInput in = new SnapshotInput(Channels.newChannel(new ByteArrayInputStream(context)))) {
+            predictor.restoreContext(in);
+        }
+
+        // a snapshot is the context followed by the table
+        byte[] switched = save(predictor, false);
+        assertArrayEquals(context, Arrays.copyOf(switched, context.length));
+        assertArrayEquals(Arrays.copyOfRange(trained, context.length, trained.length),
+                Arrays.copyOfRange(switched, context.length, switched.length));
+    }
+
+    @Test
+    void contextIsNotSavedWithBranchesInFlight() {
+        fill(4);
+        GAg predictor = (GAg) folded().get();
+        predictor.simulate(pcs, outcomes, 0, HALF, null);
+        PredictionHandle handle = new PredictionHandle();
+        predictor.predictSpeculative(pcs[HALF], handle);
+        assertThrows(IllegalStateException.class, () -> save(predictor, true));
+        predictor.resolve(handle, outcomes[HALF]);
+        assertDoesNotThrow(() -> save(predictor, true));
+    }
+
+    @Test
+    void restoreRejectsAnotherPredictor() throws IOException {
+        fill(5);
+        BranchPredictor gag = of("GAg").get();
+        gag.simulate(pcs, outcomes, 0, HALF, null);
+        Path path = directory.resolve("gag.snapshot");
+        PredictorSnapshot.save(gag, path);
+        assertThrows(IOException.class, () -> PredictorSnapshot.restore(of("PAg").get(), path));
+
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> PredictorSnapshot.restore(of("GAg").get(), path));
+    }
+}